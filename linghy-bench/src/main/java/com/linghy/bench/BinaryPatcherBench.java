@@ -0,0 +1,75 @@
+package com.linghy.bench;
+
+import com.linghy.patches.BinaryPatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BinaryPatcherBench
+{
+    // Linux online-fix signature, planted at the end of .text so a
+    // first-hit search still walks nearly the whole code section
+    private static final byte[] SIGNATURE =
+            BinaryPatcher.hexToBytes("55 53 48 83 EC 38 48 8D 6C 24 40 33 C0 48 89 45");
+    private static final BinaryPatcher.MaskedPattern MASKED =
+            BinaryPatcher.MaskedPattern.fromString("55 53 48 83 EC ?? 48 8D 6C 24 ?? 33 C0 48 89 45");
+
+    @Param({"64", "256"})
+    public int sizeMb;
+
+    private Path dir;
+    private Path binary;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        int size = sizeMb * 1024 * 1024;
+        byte[] image = Fixtures.elfImage(size, Fixtures.SEED);
+        Fixtures.plant(image, Fixtures.textEnd(size) - 4096, SIGNATURE);
+
+        dir = Fixtures.tempDir("binary");
+        binary = dir.resolve("HytaleClient");
+        Files.write(binary, image);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<BinaryPatcher.PatternMatch> findPatterns() throws IOException {
+        return BinaryPatcher.findPatterns(binary, SIGNATURE, new BinaryPatcher.SearchConfig(), null);
+    }
+
+    @Benchmark
+    public List<BinaryPatcher.PatternMatch> findPatternsAll() throws IOException {
+        return BinaryPatcher.findPatterns(binary, SIGNATURE, new BinaryPatcher.SearchConfig().findAll(), null);
+    }
+
+    @Benchmark
+    public List<BinaryPatcher.PatternMatch> findPatternsParallel() throws IOException {
+        return BinaryPatcher.findPatterns(binary, SIGNATURE,
+                new BinaryPatcher.SearchConfig().findAll().parallel(), null);
+    }
+
+    @Benchmark
+    public List<BinaryPatcher.PatternMatch> findPatternsCodeSections() throws IOException {
+        return BinaryPatcher.findPatterns(binary, SIGNATURE, new BinaryPatcher.SearchConfig().codeSections(), null);
+    }
+
+    @Benchmark
+    public BinaryPatcher.PatternMatch findMaskedPattern() throws IOException {
+        return BinaryPatcher.findMaskedPattern(binary, MASKED, new BinaryPatcher.SearchConfig());
+    }
+}
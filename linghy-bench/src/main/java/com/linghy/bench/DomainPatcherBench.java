@@ -0,0 +1,92 @@
+package com.linghy.bench;
+
+import com.linghy.patches.DomainPatcher;
+import com.linghy.patches.ExecutableLayout;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DomainPatcherBench
+{
+    private static final String TARGET_DOMAIN = "sanasol.ws";
+
+    @Param({"128"})
+    public int clientSizeMb;
+
+    @Param({"5000"})
+    public int serverEntries;
+
+    private DomainPatcher patcher;
+    private byte[] client;
+    private List<long[]> dataRanges;
+
+    private Path dir;
+    private Path serverFixture;
+    private Path server;
+
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        // The patchers log every occurrence, keep that out of the measurement
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        patcher = new DomainPatcher(TARGET_DOMAIN);
+
+        int size = clientSizeMb * 1024 * 1024;
+        client = Fixtures.elfImage(size, Fixtures.SEED);
+        Fixtures.plantDomains(client, Fixtures.textEnd(size), Fixtures.bodyEnd(size), 200, Fixtures.SEED);
+        dataRanges = ExecutableLayout.parse(client).fileRanges(null, ExecutableLayout.SectionKind.DATA);
+
+        dir = Fixtures.tempDir("domain");
+        serverFixture = Fixtures.serverJar(dir.resolve("fixture.jar"), serverEntries, 25, Fixtures.SEED);
+        server = dir.resolve("HytaleServer.jar");
+    }
+
+    @Setup(Level.Invocation)
+    public void resetServer() throws IOException
+    {
+        Files.copy(serverFixture, server, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(server.resolveSibling(server.getFileName() + ".original"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        System.setOut(stdout);
+        Fixtures.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public DomainPatcher.PatchResult applyDomainPatches() {
+        return patcher.applyDomainPatches(client, "https://");
+    }
+
+    @Benchmark
+    public DomainPatcher.PatchResult applyDomainPatchesDataSections() {
+        return patcher.applyDomainPatches(client, "https://", dataRanges);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public void patchServer() throws IOException {
+        patcher.patchServer(server, null);
+    }
+}
@@ -0,0 +1,334 @@
+package com.linghy.bench;
+
+import com.linghy.utils.FileTree;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Deterministic synthetic inputs, everything is derived from a fixed seed
+// so runs on different machines see the same bytes
+public final class Fixtures
+{
+    public static final long SEED = 0x4C494E47L;
+
+    public static final String ORIGINAL_DOMAIN = "hytale.com";
+
+    public static final int TEXT_OFFSET = 0x1000;
+    private static final int ELF_HEADER_SIZE = 64;
+    private static final int SECTION_HEADER_SIZE = 64;
+    private static final byte[] SHSTRTAB = "\0.text\0.rodata\0.shstrtab\0".getBytes(StandardCharsets.US_ASCII);
+
+    private Fixtures() {}
+
+    public static Path tempDir(String name) throws IOException {
+        return Files.createTempDirectory("linghy-bench-" + name);
+    }
+
+    public static byte[] randomBytes(int size, long seed)
+    {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    public static Path randomFile(Path file, long size, long seed) throws IOException
+    {
+        Random random = new Random(seed);
+        byte[] chunk = new byte[1024 * 1024];
+
+        try (OutputStream out = Files.newOutputStream(file))
+        {
+            for (long written = 0; written < size; written += chunk.length)
+            {
+                random.nextBytes(chunk);
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    // ELF64 image with random .text (first 70%) and .rodata sections, roughly
+    // the shape of the game client as seen by ExecutableLayout
+    public static byte[] elfImage(int size, long seed)
+    {
+        int tableSize = 4 * SECTION_HEADER_SIZE;
+        int bodyEnd = bodyEnd(size);
+        int textEnd = textEnd(size);
+
+        byte[] data = randomBytes(size, seed);
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+        buf.put(0, new byte[TEXT_OFFSET]);
+        buf.put(0, new byte[] {0x7F, 'E', 'L', 'F', 2, 1, 1, 0});
+        buf.putShort(0x10, (short) 3);
+        buf.putShort(0x12, (short) 0x3E);
+        buf.putInt(0x14, 1);
+        buf.putLong(0x28, size - tableSize);
+        buf.putShort(0x34, (short) ELF_HEADER_SIZE);
+        buf.putShort(0x3A, (short) SECTION_HEADER_SIZE);
+        buf.putShort(0x3C, (short) 4);
+        buf.putShort(0x3E, (short) 3);
+
+        buf.put(bodyEnd, SHSTRTAB);
+
+        int table = size - tableSize;
+        buf.put(table, new byte[tableSize]);
+        sectionHeader(buf, table + SECTION_HEADER_SIZE, 1, 1, 0x6, TEXT_OFFSET, textEnd - TEXT_OFFSET);
+        sectionHeader(buf, table + 2 * SECTION_HEADER_SIZE, 7, 1, 0x2, textEnd, bodyEnd - textEnd);
+        sectionHeader(buf, table + 3 * SECTION_HEADER_SIZE, 15, 3, 0, bodyEnd, SHSTRTAB.length);
+
+        return data;
+    }
+
+    private static void sectionHeader(ByteBuffer buf, int pos, int name, int type, long flags,
+                                      long offset, long size)
+    {
+        buf.putInt(pos, name);
+        buf.putInt(pos + 4, type);
+        buf.putLong(pos + 8, flags);
+        buf.putLong(pos + 16, offset);
+        buf.putLong(pos + 24, offset);
+        buf.putLong(pos + 32, size);
+    }
+
+    public static int textEnd(int size) {
+        return TEXT_OFFSET + (int) ((bodyEnd(size) - TEXT_OFFSET) * 0.7);
+    }
+
+    public static int bodyEnd(int size) {
+        return size - 4 * SECTION_HEADER_SIZE - SHSTRTAB.length;
+    }
+
+    public static void plant(byte[] data, int offset, byte[] bytes) {
+        System.arraycopy(bytes, 0, data, offset, bytes.length);
+    }
+
+    // Spreads count copies of every domain encoding the client patcher looks
+    // for across [from, to)
+    public static void plantDomains(byte[] data, int from, int to, int count, long seed)
+    {
+        Random random = new Random(seed);
+        byte[][] encodings = {
+                lengthPrefixed("https://" + ORIGINAL_DOMAIN),
+                lengthPrefixed("https://sessions." + ORIGINAL_DOMAIN),
+                lengthPrefixed("https://account-data." + ORIGINAL_DOMAIN),
+                lengthPrefixed(ORIGINAL_DOMAIN),
+                utf16le(ORIGINAL_DOMAIN + "\0")
+        };
+
+        for (int i = 0; i < count; i++)
+        {
+            byte[] bytes = encodings[i % encodings.length];
+            plant(data, from + random.nextInt(to - from - bytes.length), bytes);
+        }
+    }
+
+    public static byte[] lengthPrefixed(String str)
+    {
+        byte[] result = new byte[4 + str.length() + (str.length() - 1)];
+        result[0] = (byte) str.length();
+
+        int pos = 4;
+        for (int i = 0; i < str.length(); i++)
+        {
+            result[pos++] = (byte) str.charAt(i);
+            if (i < str.length() - 1) pos++;
+        }
+        return result;
+    }
+
+    public static byte[] utf16le(String str) {
+        return str.getBytes(StandardCharsets.UTF_16LE);
+    }
+
+    // Server-like jar: mostly .class entries, every patchEvery-th one
+    // carrying the original domain in a string constant
+    public static Path serverJar(Path file, int entries, int patchEvery, long seed) throws IOException
+    {
+        Random random = new Random(seed);
+        byte[] domain = ORIGINAL_DOMAIN.getBytes(StandardCharsets.UTF_8);
+
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file)))
+        {
+            for (int i = 0; i < entries; i++)
+            {
+                byte[] payload = new byte[512 + random.nextInt(8 * 1024)];
+                for (int j = 0; j < payload.length; j++) {
+                    payload[j] = (byte) ('!' + random.nextInt(90));
+                }
+
+                if (i % patchEvery == 0) {
+                    plant(payload, random.nextInt(payload.length - domain.length), domain);
+                }
+
+                String name;
+                byte[] body;
+
+                if (i % 10 == 9)
+                {
+                    name = String.format("assets/data/resource%05d.json", i);
+                    body = payload;
+                }
+                else
+                {
+                    String className = String.format("com/hypixel/hytale/server/pkg%03d/Class%05d", i % 200, i);
+                    name = className + ".class";
+                    body = classFile(className, new String(payload, StandardCharsets.US_ASCII));
+                }
+
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(body);
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    // Minimal well-formed class with one string constant and a long
+    // constant, enough for constant pool parsing
+    public static byte[] classFile(String className, String constant) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(61);
+        out.writeShort(9);
+
+        out.writeByte(1); out.writeUTF(className);
+        out.writeByte(7); out.writeShort(1);
+        out.writeByte(1); out.writeUTF("java/lang/Object");
+        out.writeByte(7); out.writeShort(3);
+        out.writeByte(1); out.writeUTF(constant);
+        out.writeByte(8); out.writeShort(5);
+        out.writeByte(5); out.writeLong(className.hashCode());
+
+        out.writeShort(0x21);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        return buffer.toByteArray();
+    }
+
+    // JRE-like tree under a single top-level directory, so extraction also
+    // goes through the flatten step
+    public static Path jreZip(Path file, int files, long seed) throws IOException
+    {
+        Random random = new Random(seed);
+
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file)))
+        {
+            for (int i = 0; i < files; i++)
+            {
+                zip.putNextEntry(new ZipEntry(jreEntryName(i)));
+                zip.write(jreEntryBody(random));
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    public static Path jreTarGz(Path file, int files, long seed) throws IOException
+    {
+        Random random = new Random(seed);
+
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(
+                new GzipCompressorOutputStream(Files.newOutputStream(file))))
+        {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+
+            for (int i = 0; i < files; i++)
+            {
+                byte[] body = jreEntryBody(random);
+                TarArchiveEntry entry = new TarArchiveEntry(jreEntryName(i));
+                entry.setSize(body.length);
+                entry.setMode(i % 50 == 0 ? 0755 : 0644);
+
+                tar.putArchiveEntry(entry);
+                tar.write(body);
+                tar.closeArchiveEntry();
+            }
+        }
+        return file;
+    }
+
+    private static String jreEntryName(int i)
+    {
+        if (i % 50 == 0) return String.format("jdk-17.0.10+7-jre/bin/tool%04d", i);
+        return String.format("jdk-17.0.10+7-jre/lib/module%02d/file%05d.dat", i % 40, i);
+    }
+
+    // Compressible, like most of a real JRE
+    private static byte[] jreEntryBody(Random random)
+    {
+        byte[] body = new byte[256 + random.nextInt(16 * 1024)];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return body;
+    }
+
+    // Mods folder with manifest.json in every jar and a .cfmeta sidecar for
+    // every other one, as left behind by CurseForge installs
+    public static Path modsFolder(Path dir, int mods, long seed) throws IOException
+    {
+        Random random = new Random(seed);
+        Files.createDirectories(dir);
+
+        for (int i = 0; i < mods; i++)
+        {
+            String name = String.format("mod-%04d.jar", i);
+
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(dir.resolve(name))))
+            {
+                for (int c = 0; c < 20; c++)
+                {
+                    byte[] body = new byte[1024 + random.nextInt(4096)];
+                    random.nextBytes(body);
+
+                    zip.putNextEntry(new ZipEntry(String.format("com/example/mod%04d/Class%02d.class", i, c)));
+                    zip.write(body);
+                    zip.closeEntry();
+                }
+
+                zip.putNextEntry(new ZipEntry("manifest.json"));
+                zip.write(String.format(
+                        "{\"Group\":\"Example\",\"Name\":\"Mod %d\",\"Version\":\"1.%d.0\"," +
+                        "\"Authors\":[{\"Name\":\"Author %d\"}],\"DisabledByDefault\":false}",
+                        i, i % 10, i % 7).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+
+            if (i % 2 == 0)
+            {
+                Files.writeString(dir.resolve(name + ".cfmeta"), String.format(
+                        "{\"curseForgeId\":%d,\"fileId\":%d,\"iconUrl\":\"https://example.com/%d.png\"}",
+                        100000 + i, 5000000 + i, i));
+            }
+        }
+        return dir;
+    }
+
+    public static void deleteRecursively(Path path) throws IOException
+    {
+        if (path == null) return;
+        FileTree.delete(path);
+    }
+}
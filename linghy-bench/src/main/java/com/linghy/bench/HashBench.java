@@ -0,0 +1,47 @@
+package com.linghy.bench;
+
+import com.linghy.download.DownloadManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBench
+{
+    private static final String EXPECTED = "0000000000000000000000000000000000000000000000000000000000000000";
+
+    @Param({"256"})
+    public int sizeMb;
+
+    @Param({"8192", "32768", "1048576"})
+    public int bufferSize;
+
+    private Path dir;
+    private Path file;
+    private DownloadManager manager;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        dir = Fixtures.tempDir("hash");
+        file = Fixtures.randomFile(dir.resolve("archive.pwr"), sizeMb * 1024L * 1024L, Fixtures.SEED);
+        manager = new DownloadManager(bufferSize, 0, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public boolean verifySHA256() throws Exception {
+        return manager.verifySHA256(file, EXPECTED);
+    }
+}
@@ -0,0 +1,51 @@
+package com.linghy.bench;
+
+import com.linghy.java.JREExtractor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 8)
+@Fork(1)
+public class JREExtractorBench
+{
+    @Param({"3000"})
+    public int files;
+
+    private Path dir;
+    private Path zip;
+    private Path tarGz;
+    private Path dest;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        dir = Fixtures.tempDir("jre");
+        zip = Fixtures.jreZip(dir.resolve("jre.zip"), files, Fixtures.SEED);
+        tarGz = Fixtures.jreTarGz(dir.resolve("jre.tar.gz"), files, Fixtures.SEED);
+        dest = dir.resolve("jre");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.deleteRecursively(dir);
+    }
+
+    // extractJRE clears the destination itself, so every shot also pays for
+    // deleting the previous tree, as a reinstall does
+    @Benchmark
+    public void extractZip() throws IOException {
+        JREExtractor.extractJRE(zip, dest);
+    }
+
+    @Benchmark
+    public void extractTarGz() throws IOException {
+        JREExtractor.extractJRE(tarGz, dest);
+    }
+}
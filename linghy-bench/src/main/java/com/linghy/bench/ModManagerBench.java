@@ -0,0 +1,81 @@
+package com.linghy.bench;
+
+import com.linghy.mods.ModManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModManagerBench
+{
+    @Param({"300", "500"})
+    public int mods;
+
+    private Path dir;
+    private Path modsDir;
+    private Path indexFile;
+    private ModManager warm;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        dir = Fixtures.tempDir("mods");
+        modsDir = Fixtures.modsFolder(dir.resolve("Mods"), mods, Fixtures.SEED);
+
+        indexFile = dir.resolve("mod_index.json");
+
+        warm = new ModManager(modsDir, indexFile);
+        warm.getInstalledMods();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.deleteRecursively(dir);
+    }
+
+    // First start, every jar is opened
+    @Benchmark
+    public List<ModManager.InstalledMod> getInstalledModsCold() throws IOException
+    {
+        Path coldIndex = dir.resolve("cold_index.json");
+        Files.deleteIfExists(coldIndex);
+        return new ModManager(modsDir, coldIndex).getInstalledMods();
+    }
+
+    // Cold load as the mod dialog does it, with each batch handed over as it
+    // completes
+    @Benchmark
+    public int getInstalledModsStreamedCold() throws IOException
+    {
+        Path coldIndex = dir.resolve("cold_index.json");
+        Files.deleteIfExists(coldIndex);
+
+        AtomicInteger streamed = new AtomicInteger();
+        new ModManager(modsDir, coldIndex)
+                .getInstalledModsAsync(batch -> streamed.addAndGet(batch.size()))
+                .join();
+        return streamed.get();
+    }
+
+    // Fresh manager over the saved index, as on launcher start or opening the
+    // mod dialog
+    @Benchmark
+    public List<ModManager.InstalledMod> getInstalledModsIndexed() {
+        return new ModManager(modsDir, indexFile).getInstalledMods();
+    }
+
+    @Benchmark
+    public List<ModManager.InstalledMod> getInstalledModsWarm() {
+        return warm.getInstalledMods();
+    }
+}
@@ -1,20 +1,27 @@
 package com.linghy;
 
 import com.formdev.flatlaf.FlatDarkLaf;
+import com.linghy.config.AuthConfig;
 import com.linghy.env.Cleanup;
 import com.linghy.env.Environment;
+import com.linghy.env.Trash;
 import com.linghy.launcher.LauncherFrame;
 import com.linghy.model.GameSession;
 import com.linghy.mods.curseforge.CurseForgeAPI;
+import com.linghy.patches.PatchManager;
 import com.linghy.service.AuthService;
 import com.linghy.utils.AffinityMgr;
+import com.linghy.version.GameVersion;
+import com.linghy.version.VersionManager;
 
 import javax.swing.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -179,11 +186,60 @@ public class Main
         }
     }
 
+    // Headless: --repatch-all [domain] re-patches every installed version,
+    // saving the domain first when one is given. Meant for provisioning, the
+    // exit code is non-zero when any version failed
+    private static int repatchAll(String domain)
+    {
+        AuthConfig config = AuthConfig.load();
+        if (domain != null && !domain.trim().isEmpty())
+        {
+            config.setAuthDomain(domain.trim());
+            config.save();
+        }
+
+        PatchManager patchManager = new PatchManager(config.getAuthDomain());
+        List<GameVersion> versions = new VersionManager().getInstalledVersions();
+
+        System.out.printf("Re-patching %d installed version(s) for %s%n",
+                versions.size(), patchManager.getTargetDomain());
+
+        int[] lastStep = {-1};
+
+        try
+        {
+            PatchManager.RepatchResult result = patchManager.repatchInstalled(versions, update ->
+            {
+                int step = (int) update.getProgress() / 10;
+                if (step != lastStep[0])
+                {
+                    lastStep[0] = step;
+                    System.out.printf("[%3.0f%%] %s%n", update.getProgress(), update.getMessage());
+                }
+            });
+
+            System.out.printf("Patched: %d, up to date: %d, failed: %d%n",
+                    result.patched.size(), result.upToDate.size(), result.failed.size());
+            result.failed.forEach((name, e) -> System.err.println("  " + name + ": " + e.getMessage()));
+
+            return result.failed.isEmpty() ? 0 : 1;
+        }
+        catch (IOException e)
+        {
+            System.err.println("Re-patch failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
     public static void main(String[] args)
     {
         java.security.Security.setProperty("networkaddress.cache.ttl", "60");
         java.security.Security.setProperty("networkaddress.cache.negative.ttl", "10");
 
+        if (args.length > 0 && args[0].equals("--repatch-all")) {
+            System.exit(repatchAll(args.length > 1 ? args[1] : null));
+        }
+
         if (args.length > 0)
         {
             String uri = args[0];
@@ -205,6 +261,7 @@ public class Main
         try {
             Environment.createFolders();
             Cleanup.cleanupIncompleteDownloads();
+            Trash.reclaimAsync();
         } catch (Exception e) {
             System.err.println("Warning: cleanup failed: " + e.getMessage());
         }
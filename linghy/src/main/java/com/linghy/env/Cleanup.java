@@ -1,8 +1,9 @@
 package com.linghy.env;
 
+import com.linghy.utils.FileTree;
+
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 
 public class Cleanup
 {
@@ -18,7 +19,7 @@ public class Cleanup
 
         Path stagingDir = gameLatest.resolve("staging-temp");
         if (Files.exists(stagingDir)) {
-            deleteRecursively(stagingDir);
+            FileTree.delete(stagingDir);
         }
     }
 
@@ -52,27 +53,8 @@ public class Cleanup
 
         if (!Files.exists(clientPath)) {
             System.out.println("Incomplete game installation detected, cleaning up...");
-            deleteRecursively(gameDir);
+            FileTree.delete(gameDir);
         }
     }
 
-    private static void deleteRecursively(Path path) throws IOException
-    {
-        if (!Files.exists(path)) return;
-
-        Files.walkFileTree(path, new SimpleFileVisitor<>()
-        {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                Files.delete(file);
-                return FileVisitResult.CONTINUE;
-            }
-
-            @Override
-            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                Files.delete(dir);
-                return FileVisitResult.CONTINUE;
-            }
-        });
-    }
 }
\ No newline at end of file
@@ -0,0 +1,374 @@
+package com.linghy.env;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+// On-disk size of game versions, backups, staging and caches. Every directory
+// walked is remembered with its mtime, the bytes of the files directly in it
+// and its subdirectory names. A directory's mtime only moves when entries are
+// added, removed or renamed in it, so an unchanged one is taken from the cache
+// without listing it or touching its files, and a refresh of an unchanged
+// tree costs one stat per directory. Totals are persisted so the UI can show
+// them before any refresh has run
+public class DiskUsage
+{
+    private static final String CACHE_FILE = "disk_usage.json";
+    private static final int WALK_THREADS = 4;
+    private static final long SAVE_DELAY_MS = 2000;
+
+    private static DiskUsage instance;
+
+    private final Path cacheFile;
+    private final Gson gson = new Gson();
+    private final ConcurrentHashMap<String, DirEntry> dirs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Usage> totals = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Usage>> refreshing = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ForkJoinPool pool = new ForkJoinPool(WALK_THREADS);
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r ->
+    {
+        Thread thread = new Thread(r, "disk-usage-save");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> pendingSave;
+    private volatile boolean dirty;
+
+    public interface Listener
+    {
+        // Called off the EDT
+        void onUsageChanged(Path root, Usage usage);
+    }
+
+    public static class Usage
+    {
+        public final long bytes;
+        public final long files;
+        public final long computedAt;
+
+        Usage(long bytes, long files, long computedAt)
+        {
+            this.bytes = bytes;
+            this.files = files;
+            this.computedAt = computedAt;
+        }
+
+        public String getFormattedSize() {
+            return format(bytes);
+        }
+    }
+
+    private static class DirEntry
+    {
+        long mtime;
+        long bytes;
+        long files;
+        List<String> subdirs;
+    }
+
+    private static class CacheFile
+    {
+        Map<String, DirEntry> dirs;
+        Map<String, Usage> totals;
+    }
+
+    public DiskUsage(Path cacheFile)
+    {
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    public static synchronized DiskUsage getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new DiskUsage(Environment.getDefaultAppDir().resolve(CACHE_FILE));
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::flush, "disk-usage-flush"));
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Last known usage without touching the disk, null if never computed
+    public Usage getCached(Path root) {
+        return totals.get(key(root));
+    }
+
+    // Named roots worth reporting: every game version directory plus the
+    // JRE, download cache, staging area and trash
+    public static Map<String, Path> trackedRoots()
+    {
+        Path appDir = Environment.getDefaultAppDir();
+        Path packageDir = appDir.resolve("release").resolve("package");
+        Path gameDir = packageDir.resolve("game");
+
+        Map<String, Path> roots = new LinkedHashMap<>();
+
+        if (Files.isDirectory(gameDir))
+        {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(gameDir, "patch-*"))
+            {
+                List<Path> versions = new ArrayList<>();
+                entries.forEach(versions::add);
+                versions.sort(Comparator.comparing(Path::getFileName));
+
+                for (Path version : versions) {
+                    roots.put(version.getFileName().toString(), version);
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Failed to list game versions: " + e.getMessage());
+            }
+        }
+
+        roots.put("jre", packageDir.resolve("jre"));
+        roots.put("cache", appDir.resolve("cache"));
+        roots.put("staging", gameDir.resolve("latest"));
+        roots.put("trash", Trash.getTrashDir());
+        return roots;
+    }
+
+    // A refresh already running for the root is joined
+    public synchronized CompletableFuture<Usage> refresh(Path root)
+    {
+        String rootKey = key(root);
+
+        CompletableFuture<Usage> running = refreshing.get(rootKey);
+        if (running != null && !running.isDone()) {
+            return running;
+        }
+
+        CompletableFuture<Usage> future = CompletableFuture.supplyAsync(() ->
+        {
+            long[] sum = pool.invoke(new SizeTask(root));
+            Usage usage = new Usage(sum[0], sum[1], System.currentTimeMillis());
+
+            Usage previous = totals.put(rootKey, usage);
+            scheduleSave();
+
+            if (previous == null || previous.bytes != usage.bytes || previous.files != usage.files)
+            {
+                for (Listener listener : listeners) {
+                    listener.onUsageChanged(root, usage);
+                }
+            }
+            return usage;
+        }, pool);
+
+        refreshing.put(rootKey, future);
+        future.whenComplete((usage, error) ->
+        {
+            synchronized (this) {
+                refreshing.remove(rootKey, future);
+            }
+        });
+        return future;
+    }
+
+    public void refreshAll()
+    {
+        for (Path root : trackedRoots().values()) {
+            refresh(root);
+        }
+    }
+
+    // Something under dir changed without touching its mtime, such as a file
+    // rewritten in place; its cached entry is dropped so the next refresh
+    // lists it again
+    public void invalidate(Path dir) {
+        dirs.remove(key(dir));
+    }
+
+    // dir is gone, drops it and everything below it
+    public void forget(Path dir)
+    {
+        String prefix = key(dir);
+        String below = prefix + dir.getFileSystem().getSeparator();
+
+        dirs.keySet().removeIf(k -> k.equals(prefix) || k.startsWith(below));
+        totals.keySet().removeIf(k -> k.equals(prefix) || k.startsWith(below));
+        scheduleSave();
+    }
+
+    private class SizeTask extends RecursiveTask<long[]>
+    {
+        private final Path dir;
+
+        SizeTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected long[] compute()
+        {
+            String dirKey = key(dir);
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                dirs.remove(dirKey);
+                return new long[2];
+            }
+
+            if (!attrs.isDirectory()) {
+                return new long[] {attrs.size(), 1};
+            }
+
+            long mtime = attrs.lastModifiedTime().toMillis();
+            DirEntry entry = dirs.get(dirKey);
+
+            if (entry == null || entry.mtime != mtime) {
+                entry = list(mtime);
+            }
+
+            long[] sum = {entry.bytes, entry.files};
+            if (entry.subdirs == null) {
+                return sum;
+            }
+
+            List<SizeTask> subtasks = new ArrayList<>();
+            for (String name : entry.subdirs)
+            {
+                SizeTask task = new SizeTask(dir.resolve(name));
+                task.fork();
+                subtasks.add(task);
+            }
+
+            for (SizeTask task : subtasks)
+            {
+                long[] sub = task.join();
+                sum[0] += sub[0];
+                sum[1] += sub[1];
+            }
+            return sum;
+        }
+
+        private DirEntry list(long mtime)
+        {
+            DirEntry entry = new DirEntry();
+            entry.mtime = mtime;
+            entry.subdirs = new ArrayList<>();
+
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir))
+            {
+                for (Path child : children)
+                {
+                    try
+                    {
+                        BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+
+                        if (attrs.isDirectory())
+                        {
+                            entry.subdirs.add(child.getFileName().toString());
+                        }
+                        else
+                        {
+                            entry.bytes += attrs.size();
+                            entry.files++;
+                        }
+                    }
+                    catch (IOException ignored) {
+                        // Gone while listing
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Failed to measure " + dir + ": " + e.getMessage());
+                return entry;
+            }
+
+            dirs.put(key(dir), entry);
+            return entry;
+        }
+    }
+
+    private void load()
+    {
+        if (!Files.exists(cacheFile)) return;
+
+        try
+        {
+            CacheFile file = gson.fromJson(Files.readString(cacheFile, StandardCharsets.UTF_8), CacheFile.class);
+            if (file != null)
+            {
+                if (file.dirs != null) dirs.putAll(file.dirs);
+                if (file.totals != null) totals.putAll(file.totals);
+            }
+        }
+        catch (Exception e)
+        {
+            System.err.println("Failed to load disk usage cache: " + e.getMessage());
+        }
+    }
+
+    // A refreshAll touches every root within moments, the file is written
+    // once after they settle rather than once per root
+    private synchronized void scheduleSave()
+    {
+        dirty = true;
+        if (pendingSave == null || pendingSave.isDone()) {
+            pendingSave = saver.schedule(this::flush, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void flush()
+    {
+        if (dirty) {
+            save();
+        }
+    }
+
+    private synchronized void save()
+    {
+        dirty = false;
+        pendingSave = null;
+
+        CacheFile file = new CacheFile();
+        file.dirs = new TreeMap<>(dirs);
+        file.totals = new TreeMap<>(totals);
+
+        try
+        {
+            Path tmp = cacheFile.resolveSibling(CACHE_FILE + ".tmp");
+            Files.writeString(tmp, gson.toJson(file), StandardCharsets.UTF_8);
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Failed to save disk usage cache: " + e.getMessage());
+        }
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    public static String format(long bytes)
+    {
+        double mb = bytes / (1024.0 * 1024.0);
+        double gb = mb / 1024.0;
+
+        if (gb >= 1.0) {
+            return String.format("%.2f GB", gb);
+        } else {
+            return String.format("%.2f MB", mb);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.linghy.env;
+
+import com.linghy.utils.FileTree;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+// Directories are deleted by renaming them into trash/ in the app dir, which
+// is instant and frees their place at once, and then removed by a low
+// priority background thread. Whatever is still in trash/ when the launcher
+// exits is picked up again on the next start
+public class Trash
+{
+    private static final String TRASH_DIR = "trash";
+    private static final int RECLAIM_THREADS = 2;
+
+    private static Thread reclaimer;
+    private static boolean pending;
+
+    public static Path getTrashDir() {
+        return Environment.getDefaultAppDir().resolve(TRASH_DIR);
+    }
+
+    // When dir is on another filesystem than the trash it is deleted in place
+    // before returning, so a caller never sees leftovers in either case
+    public static void moveToTrash(Path dir) throws IOException
+    {
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) return;
+
+        Path trashDir = getTrashDir();
+        Files.createDirectories(trashDir);
+
+        Path target;
+        long stamp = System.currentTimeMillis();
+        do {
+            target = trashDir.resolve(dir.getFileName() + "." + stamp++);
+        } while (Files.exists(target, LinkOption.NOFOLLOW_LINKS));
+
+        try
+        {
+            Files.move(dir, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            System.out.println("Trash is on another filesystem, deleting " + dir + " in place");
+
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                FileTree.delete(dir, pool);
+            } finally {
+                pool.shutdownNow();
+            }
+            return;
+        }
+
+        reclaimAsync();
+    }
+
+    public static synchronized void reclaimAsync()
+    {
+        pending = true;
+        if (reclaimer != null) return;
+
+        reclaimer = new Thread(Trash::reclaim, "trash-reclaimer");
+        reclaimer.setDaemon(true);
+        reclaimer.setPriority(Thread.MIN_PRIORITY);
+        reclaimer.start();
+    }
+
+    // The reclaimer leaves under the same lock reclaimAsync checks it with,
+    // so a request arriving while it finishes is never dropped
+    private static synchronized boolean takePending()
+    {
+        if (!pending)
+        {
+            reclaimer = null;
+            return false;
+        }
+
+        pending = false;
+        return true;
+    }
+
+    private static void reclaim()
+    {
+        Path trashDir = getTrashDir();
+
+        ForkJoinPool pool = new ForkJoinPool(RECLAIM_THREADS, p ->
+        {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, null, false);
+
+        try
+        {
+            while (takePending())
+            {
+                if (!Files.isDirectory(trashDir)) continue;
+
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(trashDir))
+                {
+                    for (Path entry : entries)
+                    {
+                        try
+                        {
+                            FileTree.delete(entry, pool);
+                            DiskUsage.getInstance().forget(entry);
+                            System.out.println("Reclaimed " + entry.getFileName());
+                        }
+                        catch (IOException e)
+                        {
+                            System.err.println("Failed to reclaim " + entry.getFileName() + ": " + e.getMessage());
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    System.err.println("Failed to list trash: " + e.getMessage());
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package com.linghy.java;
 
+import com.linghy.utils.FileTree;
+
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 
 import java.io.*;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.stream.StreamSupport;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -16,9 +17,7 @@ public class JREExtractor
 
     public static void extractJRE(Path archive, Path destDir) throws IOException
     {
-        if (Files.exists(destDir)) {
-            deleteRecursively(destDir);
-        }
+        FileTree.delete(destDir);
         Files.createDirectories(destDir);
 
         String fileName = archive.getFileName().toString().toLowerCase();
@@ -103,36 +102,9 @@ public class JREExtractor
                     .toArray(Path[]::new);
 
             if (entries.length == 1 && Files.isDirectory(entries[0])) {
-                Path nested = entries[0];
-
-                try (DirectoryStream<Path> nestedStream = Files.newDirectoryStream(nested)) {
-                    for (Path file : nestedStream) {
-                        Files.move(file, jreDir.resolve(file.getFileName()),
-                                StandardCopyOption.REPLACE_EXISTING);
-                    }
-                }
-
-                deleteRecursively(nested);
+                FileTree.move(entries[0], jreDir);
             }
         }
     }
 
-    private static void deleteRecursively(Path path) throws IOException
-    {
-        if (!Files.exists(path)) return;
-
-        Files.walkFileTree(path, new SimpleFileVisitor<>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                Files.delete(file);
-                return FileVisitResult.CONTINUE;
-            }
-
-            @Override
-            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                Files.delete(dir);
-                return FileVisitResult.CONTINUE;
-            }
-        });
-    }
 }
\ No newline at end of file
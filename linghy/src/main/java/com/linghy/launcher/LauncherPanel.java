@@ -1,6 +1,7 @@
 package com.linghy.launcher;
 
 import com.linghy.config.AuthConfig;
+import com.linghy.env.DiskUsage;
 import com.linghy.env.Environment;
 import com.linghy.java.JREDownloader;
 import com.linghy.model.GameSession;
@@ -40,6 +41,7 @@ import java.util.regex.Pattern;
 import com.linghy.service.AuthService;
 import com.linghy.service.TokenManager;
 import com.linghy.version.GameVersion;
+import com.linghy.version.VersionCatalog;
 import com.linghy.version.VersionManager;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -86,7 +88,7 @@ public class LauncherPanel extends JPanel
 
         this.authConfig = AuthConfig.load();
         this.authService = new AuthService();
-        this.patchManager = new PatchManager();
+        this.patchManager = new PatchManager(authConfig.getAuthDomain());
 
         setLayout(new BorderLayout());
         setOpaque(false);
@@ -1067,6 +1069,14 @@ public class LauncherPanel extends JPanel
         return button;
     }
 
+    // Picks up domain changes made in auth_config.json since startup, the
+    // patch state then re-patches from the originals on the next launch
+    private void refreshPatchDomain()
+    {
+        authConfig = AuthConfig.load();
+        patchManager.setTargetDomain(authConfig.getAuthDomain());
+    }
+
     @Deprecated
     private void applyOnlineFix()
     {
@@ -1101,6 +1111,7 @@ public class LauncherPanel extends JPanel
             @Override
             protected Void doInBackground() throws Exception
             {
+                refreshPatchDomain();
                 patchManager.ensureGamePatched(selectedVersion, update -> {
                     publish(update);
                 });
@@ -1175,10 +1186,12 @@ public class LauncherPanel extends JPanel
                     return saved;
                 }
 
-                List<GameVersion> versions = versionManager.loadCachedVersions("release");
-                if (versions.isEmpty()) versions = versionManager.loadCachedVersions("pre-release");
+                VersionCatalog catalog = VersionCatalog.getInstance();
+                for (String branch : VersionCatalog.BRANCHES) {
+                    catalog.refreshIfStale(branch);
+                }
 
-                return versions.isEmpty() ? null : versions.get(0);
+                return catalog.getLatest();
             }
 
             @Override protected void done()
@@ -1360,12 +1373,9 @@ public class LauncherPanel extends JPanel
 
         if (selectedVersion == null)
         {
-            List<GameVersion> versions = versionManager.loadCachedVersions("release");
-            if (versions.isEmpty()) {
-                versions = versionManager.loadCachedVersions("pre-release");
-            }
+            GameVersion latest = VersionCatalog.getInstance().getLatest();
 
-            if (versions.isEmpty())
+            if (latest == null)
             {
                 JOptionPane.showMessageDialog(this,
                         "Press 'Versions' for select game version",
@@ -1374,7 +1384,7 @@ public class LauncherPanel extends JPanel
                 return;
             }
 
-            selectedVersion = versions.get(0);
+            selectedVersion = latest;
         }
 
         isDownloading = true;
@@ -1400,7 +1410,9 @@ public class LauncherPanel extends JPanel
                     versionManager.markVersionInstalled(versionToInstall);
 
                     publish(new ProgressUpdate("patch", 0, "Applying patches...", "", "", 0, 0));
+                    refreshPatchDomain();
                     patchManager.ensureGamePatched(versionToInstall, this::publish);
+                    DiskUsage.getInstance().refresh(gameDir);
 
                     publish(new ProgressUpdate("auth", 0, "Authenticating...", "", "", 0, 0));
                     GameSession session = TokenManager.getOrFetchSession(
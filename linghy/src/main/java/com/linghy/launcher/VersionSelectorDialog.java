@@ -1,7 +1,9 @@
 package com.linghy.launcher;
 
+import com.linghy.env.DiskUsage;
 import com.linghy.env.Environment;
 import com.linghy.version.GameVersion;
+import com.linghy.version.VersionCatalog;
 import com.linghy.version.VersionManager;
 
 import javax.swing.*;
@@ -12,6 +14,9 @@ import java.awt.event.MouseEvent;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 public class VersionSelectorDialog extends JDialog
 {
@@ -20,12 +25,34 @@ public class VersionSelectorDialog extends JDialog
     private JList<GameVersion> versionList;
     private DefaultListModel<GameVersion> listModel;
     private JLabel statusLabel;
+    private JLabel diskUsageLabel;
     private JButton installButton;
     private JButton deleteButton;
     private JButton refreshButton;
     private JComboBox<String> branchSelector;
     private String currentBranch = "release";
     private GameVersion initialSelectedVersion;
+    private final VersionCatalog catalog = VersionCatalog.getInstance();
+    private final AtomicBoolean updateQueued = new AtomicBoolean();
+    private final DiskUsage diskUsage = DiskUsage.getInstance();
+    private final DiskUsage.Listener diskUsageListener = (root, usage) ->
+            SwingUtilities.invokeLater(() ->
+            {
+                versionList.repaint();
+                updateDiskUsageLabel();
+            });
+    private final VersionCatalog.Listener catalogListener = new VersionCatalog.Listener()
+    {
+        @Override
+        public void onVersionsChanged(String branch, List<GameVersion> versions) {
+            VersionSelectorDialog.this.onVersionsChanged(branch, versions);
+        }
+
+        @Override
+        public void onRefreshFinished(String branch, Exception error) {
+            VersionSelectorDialog.this.onRefreshFinished(branch, error);
+        }
+    };
 
     public VersionSelectorDialog(Frame parent, VersionManager versionManager, GameVersion currentSelected)
     {
@@ -39,6 +66,9 @@ public class VersionSelectorDialog extends JDialog
         setUndecorated(true);
 
         initComponents();
+        catalog.addListener(catalogListener);
+        diskUsage.addListener(diskUsageListener);
+        updateDiskUsageLabel();
         loadVersions();
     }
 
@@ -147,6 +177,12 @@ public class VersionSelectorDialog extends JDialog
         branchPanel.add(branchLabel);
         branchPanel.add(branchSelector);
 
+        diskUsageLabel = new JLabel(" ");
+        diskUsageLabel.setForeground(new Color(120, 120, 130));
+        diskUsageLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        branchPanel.add(Box.createHorizontalStrut(20));
+        branchPanel.add(diskUsageLabel);
+
         centerPanel.add(branchPanel, BorderLayout.NORTH);
 
         listModel = new DefaultListModel<>();
@@ -156,7 +192,9 @@ public class VersionSelectorDialog extends JDialog
         versionList.setForeground(Color.WHITE);
         versionList.setFont(new Font("Segoe UI", Font.PLAIN, 14));
         versionList.setBorder(new EmptyBorder(10, 10, 10, 10));
-        versionList.setCellRenderer(new VersionListCellRenderer());
+        versionList.setCellRenderer(new VersionListCellRenderer(version -> version.isInstalled()
+                ? diskUsage.getCached(versionManager.getVersionDirectory(version.getPatchNumber(), version.getBranch()))
+                : null));
 
         versionList.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
@@ -348,31 +386,23 @@ public class VersionSelectorDialog extends JDialog
 
     private void loadVersions()
     {
+        String branch = currentBranch;
+
         SwingWorker<Void, Void> worker = new SwingWorker<>() {
             List<GameVersion> versions;
 
             @Override
             protected Void doInBackground() {
-                versions = versionManager.loadCachedVersions(currentBranch);
-
-                if (versions.isEmpty())
-                {
-                    try {
-                        versions = versionManager.scanAvailableVersions(currentBranch,
-                                (percent, message) ->
-                                        SwingUtilities.invokeLater(() ->
-                                                statusLabel.setText(message + " (" + percent + "%)")));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-
+                versions = catalog.getVersions(branch);
+                diskUsage.refreshAll();
                 return null;
             }
 
             @Override
             protected void done()
             {
+                if (!branch.equals(currentBranch)) return;
+
                 displayVersions(versions);
 
                 if (initialSelectedVersion != null)
@@ -389,6 +419,12 @@ public class VersionSelectorDialog extends JDialog
                         }
                     }
                 }
+
+                if (versions.isEmpty()) {
+                    refreshVersions();
+                } else {
+                    catalog.refreshIfStale(branch);
+                }
             }
         };
 
@@ -398,39 +434,74 @@ public class VersionSelectorDialog extends JDialog
     private void refreshVersions()
     {
         refreshButton.setEnabled(false);
-        branchSelector.setEnabled(false);
         statusLabel.setText("Updating versions list...");
 
-        SwingWorker<Void, Void> worker = new SwingWorker<>() {
-            List<GameVersion> versions;
+        catalog.refresh(currentBranch, (percent, message) ->
+                SwingUtilities.invokeLater(() ->
+                        statusLabel.setText(message + " (" + percent + "%)")));
+    }
 
-            @Override
-            protected Void doInBackground() {
-                try {
-                    versions = versionManager.scanAvailableVersions(currentBranch,
-                            (percent, message) ->
-                                    SwingUtilities.invokeLater(() ->
-                                            statusLabel.setText(message + " (" + percent + "%)")));
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    versions = versionManager.loadCachedVersions(currentBranch);
-                }
-                return null;
+    // Catalog changes arrive off the EDT, one per confirmed patch during a
+    // scan. They are folded into a single list update per EDT turn, so the
+    // list grows while the scan runs and stays selectable
+    private void onVersionsChanged(String branch, List<GameVersion> versions)
+    {
+        if (!updateQueued.compareAndSet(false, true)) return;
+
+        SwingUtilities.invokeLater(() ->
+        {
+            updateQueued.set(false);
+            displayVersions(catalog.getVersions(currentBranch));
+        });
+    }
+
+    private void onRefreshFinished(String branch, Exception error)
+    {
+        SwingUtilities.invokeLater(() ->
+        {
+            refreshButton.setEnabled(true);
+
+            if (branch.equals(currentBranch) && error == null) {
+                displayVersions(catalog.getVersions(branch));
+            } else if (branch.equals(currentBranch)) {
+                statusLabel.setText("Failed to update versions: " + error.getMessage());
             }
+        });
+    }
 
-            @Override
-            protected void done() {
-                displayVersions(versions);
-                refreshButton.setEnabled(true);
-                branchSelector.setEnabled(true);
+    // Totals as last measured, refreshed in the background while the dialog is open
+    private void updateDiskUsageLabel()
+    {
+        long versions = 0;
+        long other = 0;
+
+        for (Map.Entry<String, Path> root : DiskUsage.trackedRoots().entrySet())
+        {
+            DiskUsage.Usage usage = diskUsage.getCached(root.getValue());
+            if (usage == null) continue;
+
+            if (root.getKey().startsWith("patch-")) {
+                versions += usage.bytes;
+            } else {
+                other += usage.bytes;
             }
-        };
+        }
 
-        worker.execute();
+        diskUsageLabel.setText(String.format("On disk: versions %s, JRE and caches %s",
+                DiskUsage.format(versions), DiskUsage.format(other)));
+    }
+
+    @Override
+    public void dispose()
+    {
+        catalog.removeListener(catalogListener);
+        diskUsage.removeListener(diskUsageListener);
+        super.dispose();
     }
 
     private void displayVersions(List<GameVersion> versions)
     {
+        GameVersion selected = versionList.getSelectedValue();
         listModel.clear();
 
         for (GameVersion version : versions)
@@ -456,8 +527,19 @@ public class VersionSelectorDialog extends JDialog
         String branchName = currentBranch.equals("pre-release") ? "pre-release" : "release";
         statusLabel.setText("Available " + branchName + " versions: " + versions.size());
 
+        int selectIndex = 0;
+        for (int i = 0; selected != null && i < listModel.getSize(); i++)
+        {
+            GameVersion v = listModel.getElementAt(i);
+            if (v.getPatchNumber() == selected.getPatchNumber() && v.getBranch().equals(selected.getBranch()))
+            {
+                selectIndex = i;
+                break;
+            }
+        }
+
         if (!versions.isEmpty()) {
-            versionList.setSelectedIndex(0);
+            versionList.setSelectedIndex(selectIndex);
         }
     }
 
@@ -590,6 +672,12 @@ public class VersionSelectorDialog extends JDialog
 
     private static class VersionListCellRenderer extends DefaultListCellRenderer
     {
+        private final Function<GameVersion, DiskUsage.Usage> usageOf;
+
+        VersionListCellRenderer(Function<GameVersion, DiskUsage.Usage> usageOf) {
+            this.usageOf = usageOf;
+        }
+
         @Override
         public Component getListCellRendererComponent(JList<?> list, Object value,
                                                       int index, boolean isSelected, boolean cellHasFocus)
@@ -607,15 +695,19 @@ public class VersionSelectorDialog extends JDialog
                         ? "<span style='color:#FFA845;'>[Pre-Release]</span>"
                         : "<span style='color:#4A9EFF;'>[Release]</span>";
 
+                DiskUsage.Usage usage = usageOf.apply(version);
+                String onDisk = usage != null ? " | On disk: <b>" + usage.getFormattedSize() + "</b>" : "";
+
                 String text = String.format(
                         "<html><div style='padding:4px;'>" +
                                 "<div style='font-size:15px; font-weight:bold; margin-bottom:6px;'>%s %s</div>" +
                                 "<div style='font-size:11px; color:#aaa;'>" +
-                                "Size: <b>%s</b> | Patch: <b>#%d</b> | %s" +
+                                "Size: <b>%s</b>%s | Patch: <b>#%d</b> | %s" +
                                 "</div></div></html>",
                         version.getName(),
                         branchBadge,
                         version.getFormattedSize(),
+                        onDisk,
                         version.getPatchNumber(),
                         installedBadge
                 );
@@ -0,0 +1,122 @@
+package com.linghy.mods;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// What the mod list shows for every jar in a mods folder, persisted so that
+// opening the list after a launcher start only stats the folder. An entry
+// remembers the size and mtime of the jar and of its .cfmeta sidecar; the
+// manifest is read again only when the jar changes, and the sidecar only
+// when the sidecar does
+public class ModIndex
+{
+    private final Path indexFile;
+    private final Gson gson = new Gson();
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    static class Entry
+    {
+        long size;
+        long mtime;
+
+        // -1 when the jar has no sidecar
+        long metaSize = -1;
+        long metaMtime = -1;
+
+        boolean hasManifest;
+        String name;
+        String version;
+        String author;
+        boolean enabled = true;
+
+        int curseForgeId;
+        int fileId;
+        String iconUrl;
+
+        boolean jarMatches(long size, long mtime) {
+            return this.size == size && this.mtime == mtime;
+        }
+
+        boolean metaMatches(long metaSize, long metaMtime) {
+            return this.metaSize == metaSize && this.metaMtime == metaMtime;
+        }
+    }
+
+    public ModIndex(Path indexFile)
+    {
+        this.indexFile = indexFile;
+        load();
+    }
+
+    Entry get(String fileName) {
+        return entries.get(fileName);
+    }
+
+    void put(String fileName, Entry entry)
+    {
+        entries.put(fileName, entry);
+        dirty = true;
+    }
+
+    void remove(String fileName)
+    {
+        if (entries.remove(fileName) != null) {
+            dirty = true;
+        }
+    }
+
+    // Drops the entries of jars that are no longer in the folder
+    void retainAll(Set<String> fileNames)
+    {
+        if (entries.keySet().retainAll(fileNames)) {
+            dirty = true;
+        }
+    }
+
+    public synchronized void save()
+    {
+        if (!dirty) return;
+        dirty = false;
+
+        try
+        {
+            Files.createDirectories(indexFile.getParent());
+
+            Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            Files.writeString(tmp, gson.toJson(new TreeMap<>(entries)), StandardCharsets.UTF_8);
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            dirty = true;
+            System.err.println("Failed to save mod index: " + e.getMessage());
+        }
+    }
+
+    private void load()
+    {
+        if (!Files.exists(indexFile)) return;
+
+        try
+        {
+            Type type = new TypeToken<Map<String, Entry>>() {}.getType();
+            Map<String, Entry> loaded = gson.fromJson(Files.readString(indexFile, StandardCharsets.UTF_8), type);
+
+            if (loaded != null) {
+                entries.putAll(loaded);
+            }
+        }
+        catch (Exception e)
+        {
+            System.err.println("Failed to load mod index: " + e.getMessage());
+        }
+    }
+}
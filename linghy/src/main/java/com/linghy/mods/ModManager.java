@@ -17,28 +17,61 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class ModManager
 {
+    // Reading jars is I/O bound, a few threads keep an SSD busy without
+    // flooding a spinning disk with seeks
+    private static final int LOAD_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static final int LOAD_BATCH = 16;
+
+    private static final ExecutorService loader = Executors.newFixedThreadPool(LOAD_THREADS, r ->
+    {
+        Thread thread = new Thread(r, "mod-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final int INSTALL_PARALLELISM = 4;
+
+    private static HttpClient httpClient;
+
+    public static final Comparator<InstalledMod> BY_NAME = Comparator
+            .comparing((InstalledMod mod) -> mod.name, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(mod -> mod.id);
+
     private final Gson gson;
     private final Path modsDir;
-    private final Map<String, ModManifest> manifestCache;
+    private final ModIndex index;
 
     public ModManager()
     {
-        this.gson = new Gson();
-        this.manifestCache = new ConcurrentHashMap<>();
-
-        this.modsDir = Environment.getDefaultAppDir()
+        this(Environment.getDefaultAppDir()
                 .resolve("UserData")
-                .resolve("Mods");
+                .resolve("Mods"),
+             Environment.getDefaultAppDir()
+                .resolve("mod_index.json"));
+    }
+
+    public ModManager(Path modsDir)
+    {
+        this(modsDir, modsDir.resolveSibling("mod_index.json"));
+    }
+
+    public ModManager(Path modsDir, Path indexFile)
+    {
+        this.gson = new Gson();
+        this.index = new ModIndex(indexFile);
+        this.modsDir = modsDir;
 
         try {
             Files.createDirectories(modsDir);
@@ -51,41 +84,104 @@ public class ModManager
         return this.modsDir;
     }
 
-    public CompletableFuture<List<InstalledMod>> getInstalledModsAsync()
-    {
-        return CompletableFuture.supplyAsync(() -> getInstalledMods());
+    public CompletableFuture<List<InstalledMod>> getInstalledModsAsync() {
+        return getInstalledModsAsync(null);
     }
 
-    public List<InstalledMod> getInstalledMods()
+    // Jars are read in batches on the loader threads and every batch is handed
+    // to the listener as soon as it is done, in no particular order; the
+    // future completes with the full list sorted by name
+    public CompletableFuture<List<InstalledMod>> getInstalledModsAsync(ModBatchListener listener)
     {
-        List<InstalledMod> mods = new ArrayList<>();
-
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(modsDir, "*.jar"))
+        return CompletableFuture.supplyAsync(this::listJars, loader).thenCompose(jars ->
         {
-            for (Path modFile : stream)
+            if (jars == null) {
+                return CompletableFuture.completedFuture(new ArrayList<>());
+            }
+
+            List<CompletableFuture<List<InstalledMod>>> batches = new ArrayList<>();
+
+            for (int from = 0; from < jars.size(); from += LOAD_BATCH)
+            {
+                List<Path> slice = jars.subList(from, Math.min(from + LOAD_BATCH, jars.size()));
+
+                batches.add(CompletableFuture.supplyAsync(() ->
+                {
+                    List<InstalledMod> loaded = new ArrayList<>();
+                    for (Path modFile : slice)
+                    {
+                        InstalledMod mod = loadModInfo(modFile);
+                        if (mod != null) {
+                            loaded.add(mod);
+                        }
+                    }
+
+                    if (listener != null && !loaded.isEmpty()) {
+                        listener.onBatch(loaded);
+                    }
+                    return loaded;
+                }, loader));
+            }
+
+            return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(v ->
             {
-                InstalledMod mod = loadModInfo(modFile);
+                List<InstalledMod> mods = new ArrayList<>();
+                for (CompletableFuture<List<InstalledMod>> batch : batches) {
+                    mods.addAll(batch.join());
+                }
 
-                if (mod != null) {
-                    mods.add(mod);
+                Set<String> seen = new HashSet<>();
+                for (Path jar : jars) {
+                    seen.add(jar.getFileName().toString());
                 }
+
+                index.retainAll(seen);
+                index.save();
+
+                mods.sort(BY_NAME);
+                return mods;
+            });
+        });
+    }
+
+    public List<InstalledMod> getInstalledMods() {
+        return getInstalledModsAsync().join();
+    }
+
+    // Reads one jar again after it changed on disk, null once it is gone
+    public InstalledMod refreshMod(String fileName)
+    {
+        Path modFile = modsDir.resolve(fileName);
+        InstalledMod mod = Files.exists(modFile) ? loadModInfo(modFile) : null;
+
+        if (mod == null) {
+            index.remove(fileName);
+        }
+        index.save();
+        return mod;
+    }
+
+    // null when the folder can not be listed, so the index is not pruned
+    private List<Path> listJars()
+    {
+        List<Path> jars = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(modsDir, "*.jar"))
+        {
+            for (Path modFile : stream) {
+                jars.add(modFile);
             }
         } catch (IOException e)
         {
             System.err.println("Failed to list installed mods: " + e.getMessage());
+            return null;
         }
 
-        return mods;
+        return jars;
     }
 
     private ModManifest readManifest(Path jar)
     {
-        String jarPath = jar.toString();
-
-        if (manifestCache.containsKey(jarPath)) {
-            return manifestCache.get(jarPath);
-        }
-
         try (ZipFile zip = new ZipFile(jar.toFile()))
         {
             ZipEntry entry = zip.getEntry("manifest.json");
@@ -94,9 +190,7 @@ public class ModManager
             try (InputStream is = zip.getInputStream(entry))
             {
                 String json = new String(is.readAllBytes());
-                ModManifest manifest = gson.fromJson(json, ModManifest.class);
-                manifestCache.put(jarPath, manifest);
-                return manifest;
+                return gson.fromJson(json, ModManifest.class);
             }
         } catch (Exception e)
         {
@@ -104,65 +198,124 @@ public class ModManager
         }
     }
 
+    // Served from the index while the jar and its sidecar keep their size and
+    // mtime; whichever of the two changed is read again
     private InstalledMod loadModInfo(Path modFile)
     {
         try
         {
-            Path metaFile = modFile.resolveSibling(modFile.getFileName() + ".cfmeta");
-            int curseForgeId = 0;
-            int fileId = 0;
-            String iconUrl = null;
+            String fileName = modFile.getFileName().toString();
+            Path metaFile = modFile.resolveSibling(fileName + ".cfmeta");
 
-            if (Files.exists(metaFile))
+            BasicFileAttributes jarAttrs = Files.readAttributes(modFile, BasicFileAttributes.class);
+            long size = jarAttrs.size();
+            long mtime = jarAttrs.lastModifiedTime().toMillis();
+
+            long metaSize = -1;
+            long metaMtime = -1;
+            try
+            {
+                BasicFileAttributes metaAttrs = Files.readAttributes(metaFile, BasicFileAttributes.class);
+                metaSize = metaAttrs.size();
+                metaMtime = metaAttrs.lastModifiedTime().toMillis();
+            } catch (NoSuchFileException e) {
+                // No sidecar
+            }
+
+            ModIndex.Entry cached = index.get(fileName);
+            boolean jarFresh = cached != null && cached.jarMatches(size, mtime);
+            boolean metaFresh = cached != null && cached.metaMatches(metaSize, metaMtime);
+
+            if (jarFresh && metaFresh) {
+                return toInstalledMod(fileName, cached);
+            }
+
+            ModIndex.Entry entry = new ModIndex.Entry();
+            entry.size = size;
+            entry.mtime = mtime;
+            entry.metaSize = metaSize;
+            entry.metaMtime = metaMtime;
+
+            if (jarFresh)
+            {
+                entry.hasManifest = cached.hasManifest;
+                entry.name = cached.name;
+                entry.version = cached.version;
+                entry.author = cached.author;
+                entry.enabled = cached.enabled;
+            }
+            else
+            {
+                ModManifest manifest = readManifest(modFile);
+
+                if (manifest != null)
+                {
+                    entry.hasManifest = true;
+                    entry.name = manifest.Name;
+                    entry.version = manifest.Version != null ? manifest.Version : "Unknown";
+                    entry.author = manifest.Authors != null && !manifest.Authors.isEmpty()
+                            ? manifest.Authors.get(0).Name
+                            : "Unknown";
+                    entry.enabled = !manifest.DisabledByDefault;
+                }
+            }
+
+            if (metaFresh)
+            {
+                entry.curseForgeId = cached.curseForgeId;
+                entry.fileId = cached.fileId;
+                entry.iconUrl = cached.iconUrl;
+            }
+            else if (metaSize >= 0)
             {
                 try {
                     String metaJson = Files.readString(metaFile);
                     ModMetadata meta = gson.fromJson(metaJson, ModMetadata.class);
                     if (meta != null)
                     {
-                        curseForgeId = meta.curseForgeId;
-                        fileId = meta.fileId;
-                        iconUrl = meta.iconUrl;
+                        entry.curseForgeId = meta.curseForgeId;
+                        entry.fileId = meta.fileId;
+                        entry.iconUrl = meta.iconUrl;
                     }
                 } catch (Exception e) {
                     // ...
                 }
             }
 
-            ModManifest manifest = readManifest(modFile);
-
-            if (manifest != null)
-            {
-                return new InstalledMod(
-                        modFile.getFileName().toString(),
-                        manifest.Name,
-                        manifest.Version != null ? manifest.Version : "Unknown",
-                        manifest.Authors != null && !manifest.Authors.isEmpty()
-                                ? manifest.Authors.get(0).Name
-                                : "Unknown",
-                        !manifest.DisabledByDefault,
-                        iconUrl,
-                        curseForgeId,
-                        fileId
-                );
-            }
+            index.put(fileName, entry);
+            return toInstalledMod(fileName, entry);
 
-            String fileName = modFile.getFileName().toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
 
+    private static InstalledMod toInstalledMod(String fileName, ModIndex.Entry entry)
+    {
+        if (entry.hasManifest)
+        {
             return new InstalledMod(
                     fileName,
-                    fileName.replace(".jar", ""),
-                    "Unknown",
-                    "Unknown",
-                    true,
-                    iconUrl,
-                    curseForgeId,
-                    fileId
+                    entry.name != null ? entry.name : fileName.replace(".jar", ""),
+                    entry.version,
+                    entry.author,
+                    entry.enabled,
+                    entry.iconUrl,
+                    entry.curseForgeId,
+                    entry.fileId
             );
-
-        } catch (Exception e) {
-            return null;
         }
+
+        return new InstalledMod(
+                fileName,
+                fileName.replace(".jar", ""),
+                "Unknown",
+                "Unknown",
+                true,
+                entry.iconUrl,
+                entry.curseForgeId,
+                entry.fileId
+        );
     }
 
     public CompletableFuture<Void> downloadAndInstallAsync(CurseForgeAPI.ModFile file, ModProgressListener listener)
@@ -177,6 +330,107 @@ public class ModManager
         });
     }
 
+    // Downloads a batch of mods, INSTALL_PARALLELISM at a time, each through
+    // downloadAndInstall. Total progress weighs every item by its size when
+    // all sizes are known, equally otherwise. Completes once every item has
+    // finished with the failed ones mapped to their error; a file name asked
+    // for twice is installed once
+    public CompletableFuture<Map<InstallRequest, Exception>> installAll(List<InstallRequest> requests,
+                                                                       InstallQueueListener listener)
+    {
+        Map<String, InstallRequest> unique = new LinkedHashMap<>();
+        for (InstallRequest request : requests) {
+            unique.putIfAbsent(request.file.fileName, request);
+        }
+
+        List<InstallRequest> queue = new ArrayList<>(unique.values());
+        Map<InstallRequest, Exception> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        if (queue.isEmpty()) {
+            return CompletableFuture.completedFuture(failures);
+        }
+
+        boolean sized = queue.stream().allMatch(r -> r.file.fileLength > 0);
+        double[] weights = new double[queue.size()];
+        double totalWeight = 0;
+        for (int i = 0; i < queue.size(); i++)
+        {
+            weights[i] = sized ? queue.get(i).file.fileLength : 1;
+            totalWeight += weights[i];
+        }
+
+        double[] percents = new double[queue.size()];
+        int[] finished = {0};
+        double weightSum = totalWeight;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(INSTALL_PARALLELISM, queue.size()), r ->
+        {
+            Thread thread = new Thread(r, "mod-install");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<CompletableFuture<Void>> items = new ArrayList<>();
+        for (int i = 0; i < queue.size(); i++)
+        {
+            int item = i;
+            InstallRequest request = queue.get(i);
+
+            ModProgressListener itemListener = (percent, message) ->
+            {
+                double total;
+                int done;
+                synchronized (percents)
+                {
+                    percents[item] = Math.max(percents[item], percent);
+
+                    double sum = 0;
+                    for (int j = 0; j < percents.length; j++) {
+                        sum += percents[j] * weights[j];
+                    }
+                    total = sum / weightSum;
+                    done = finished[0];
+                }
+
+                if (listener != null) {
+                    listener.onProgress(request, percent, message, total, done, percents.length);
+                }
+            };
+
+            items.add(CompletableFuture.runAsync(() ->
+            {
+                try {
+                    downloadAndInstall(request.file, request.curseForgeId, request.iconUrl, itemListener);
+                } catch (Exception e) {
+                    failures.put(request, e);
+                }
+
+                synchronized (percents) {
+                    finished[0]++;
+                }
+                itemListener.onProgress(100, failures.containsKey(request) ? "Failed" : "Done");
+            }, pool));
+        }
+
+        return CompletableFuture.allOf(items.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((v, e) -> pool.shutdown())
+                .thenApply(v -> failures);
+    }
+
+    public static class InstallRequest
+    {
+        public final CurseForgeAPI.ModFile file;
+        public final int curseForgeId;
+        public final String iconUrl;
+
+        public InstallRequest(CurseForgeAPI.ModFile file, int curseForgeId, String iconUrl)
+        {
+            this.file = file;
+            this.curseForgeId = curseForgeId;
+            this.iconUrl = iconUrl;
+        }
+    }
+
     public void downloadAndInstall(CurseForgeAPI.ModFile file, ModProgressListener listener) throws IOException
     {
         downloadAndInstall(file, 0, null, listener);
@@ -212,36 +466,7 @@ public class ModManager
             String userAgent = String.format("Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/144.0.0.0 Safari/537.36",
                     Environment.getVersion());
 
-            SSLContext sslContext;
-            try {
-                sslContext = SSLContext.getInstance("TLSv1.3");
-                sslContext.init(null, null, null);
-            } catch (NoSuchAlgorithmException e)
-            {
-                try {
-                    sslContext = SSLContext.getInstance("TLSv1.2");
-                    sslContext.init(null, null, null);
-                    System.out.println("Using TLS 1.2 (TLS 1.3 not available)");
-                } catch (Exception ex) {
-                    throw new IOException("Failed to initialize secure SSL context", ex);
-                }
-            } catch (Exception e) {
-                throw new IOException("Failed to initialize secure SSL context", e);
-            }
-
-            SSLParameters sslParameters = new SSLParameters();
-            sslParameters.setProtocols(new String[]{"TLSv1.3", "TLSv1.2"});
-            sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
-
-            HttpClient client = HttpClient.newBuilder()
-                    .sslContext(sslContext)
-                    .sslParameters(sslParameters)
-                    .connectTimeout(Duration.ofSeconds(30))
-                    .followRedirects(HttpClient.Redirect.ALWAYS)
-                    .build();
-
-            System.out.println("Secure SSL/TLS connection configured");
-            System.out.println("Certificate verification enabled");
+            HttpClient client = secureClient();
 
             HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
                     .uri(URI.create(downloadUrl))
@@ -453,7 +678,7 @@ public class ModManager
                 System.out.println("Metadata saved");
             }
 
-            manifestCache.remove(outPath.toString());
+            index.remove(fileName);
 
             if (listener != null) {
                 listener.onProgress(100, "Done");
@@ -495,6 +720,47 @@ public class ModManager
         }
     }
 
+    // One client for every mod download, so parallel and back to back
+    // downloads share its pooled connections and TLS sessions
+    private static synchronized HttpClient secureClient() throws IOException
+    {
+        if (httpClient != null) {
+            return httpClient;
+        }
+
+        SSLContext sslContext;
+        try {
+            sslContext = SSLContext.getInstance("TLSv1.3");
+            sslContext.init(null, null, null);
+        } catch (NoSuchAlgorithmException e)
+        {
+            try {
+                sslContext = SSLContext.getInstance("TLSv1.2");
+                sslContext.init(null, null, null);
+                System.out.println("Using TLS 1.2 (TLS 1.3 not available)");
+            } catch (Exception ex) {
+                throw new IOException("Failed to initialize secure SSL context", ex);
+            }
+        } catch (Exception e) {
+            throw new IOException("Failed to initialize secure SSL context", e);
+        }
+
+        SSLParameters sslParameters = new SSLParameters();
+        sslParameters.setProtocols(new String[]{"TLSv1.3", "TLSv1.2"});
+        sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+
+        httpClient = HttpClient.newBuilder()
+                .sslContext(sslContext)
+                .sslParameters(sslParameters)
+                .connectTimeout(Duration.ofSeconds(30))
+                .followRedirects(HttpClient.Redirect.ALWAYS)
+                .build();
+
+        System.out.println("Secure SSL/TLS connection configured");
+        System.out.println("Certificate verification enabled");
+        return httpClient;
+    }
+
     private static class ModMetadata
     {
         int curseForgeId;
@@ -514,10 +780,11 @@ public class ModManager
         Path modFile = modsDir.resolve(modFileName);
         Path metaFile = modFile.resolveSibling(modFileName + ".cfmeta");
 
-        manifestCache.remove(modFile.toString());
-
         Files.deleteIfExists(modFile);
         Files.deleteIfExists(metaFile);
+
+        index.remove(modFileName);
+        index.save();
     }
 
     public void openModsFolder() throws IOException
@@ -554,4 +821,15 @@ public class ModManager
     public interface ModProgressListener {
         void onProgress(double percent, String message);
     }
+
+    // Called on the download threads
+    public interface InstallQueueListener {
+        void onProgress(InstallRequest request, double percent, String message,
+                        double totalPercent, int finished, int total);
+    }
+
+    // Called on a loader thread
+    public interface ModBatchListener {
+        void onBatch(List<InstalledMod> batch);
+    }
 }
\ No newline at end of file
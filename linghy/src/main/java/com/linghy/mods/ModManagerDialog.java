@@ -2,6 +2,7 @@ package com.linghy.mods;
 
 import com.linghy.launcher.SettingsDialog;
 import com.linghy.mods.curseforge.CurseForgeAPI;
+import com.linghy.utils.FileTree;
 import com.linghy.version.GameVersion;
 import com.linghy.version.VersionManager;
 import com.linghy.env.Environment;
@@ -24,7 +25,11 @@ import java.time.Instant;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -34,7 +39,11 @@ public class ModManagerDialog extends JDialog
 
     private JTabbedPane tabbedPane;
     private JList<ModManager.InstalledMod> installedList;
+    private JTextField installedSearch;
     private DefaultListModel<ModManager.InstalledMod> installedModel;
+    private final List<ModManager.InstalledMod> installedMods = new ArrayList<>();
+    private int installedLoadGeneration;
+    private ModWatcher modWatcher;
 
     private JButton deleteButton;
     private JButton checkUpdatesButton;
@@ -67,6 +76,20 @@ public class ModManagerDialog extends JDialog
         initComponents();
         loadInstalledMods();
 
+        modWatcher = new ModWatcher(modManager, new ModWatcher.Listener()
+        {
+            @Override
+            public void onModChanged(String fileName, ModManager.InstalledMod mod) {
+                SwingUtilities.invokeLater(() -> applyModChange(fileName, mod));
+            }
+
+            @Override
+            public void onRescanNeeded() {
+                SwingUtilities.invokeLater(ModManagerDialog.this::loadInstalledMods);
+            }
+        });
+        modWatcher.start();
+
         if (isUserInRussia()) {
             SwingUtilities.invokeLater(this::showRussiaWarningDialog);
         }
@@ -79,6 +102,15 @@ public class ModManagerDialog extends JDialog
         });
     }
 
+    @Override
+    public void dispose()
+    {
+        if (modWatcher != null) {
+            modWatcher.close();
+        }
+        super.dispose();
+    }
+
     private void initComponents()
     {
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -346,7 +378,12 @@ public class ModManagerDialog extends JDialog
                 String timestamp = String.valueOf(System.currentTimeMillis());
                 Path backupDir = gameDir.resolve("Client.backup." + timestamp);
 
-                copyDirectory(gameDir, backupDir);
+                FileTree.Stats backup = FileTree.copy(gameDir, backupDir, new FileTree.Options()
+                        .filter(relative -> !relative.toString().startsWith("Client.backup."))
+                        .progress((files, bytes, rate) -> publish(String.format(
+                                "Creating backup of Client directory... %d MB (%.0f MB/s)",
+                                bytes / 1048576, rate / 1048576))));
+                System.out.println("Backup of " + gameDir.getFileName() + ": " + backup);
                 publish("Backup created: " + backupDir.getFileName());
 
                 try
@@ -375,13 +412,13 @@ public class ModManagerDialog extends JDialog
                             extractZipFile(tempZip, tempExtractDir);
 
                             publish("Installing files to Client directory...");
-                            copyDirectoryContents(tempExtractDir, gameDir);
+                            FileTree.copy(tempExtractDir, gameDir);
 
                             publish("Cleaning up temporary files...");
                         }
                         finally
                         {
-                            deleteDirectory(tempExtractDir);
+                            FileTree.delete(tempExtractDir);
                         }
                     }
                     finally
@@ -395,9 +432,19 @@ public class ModManagerDialog extends JDialog
                 {
                     publish("Error occurred! Restoring from backup...");
 
+                    // The backup lives inside gameDir, so everything around
+                    // it goes and its contents are moved back up
                     try {
-                        deleteDirectory(gameDir);
-                        Files.move(backupDir, gameDir, StandardCopyOption.REPLACE_EXISTING);
+                        try (DirectoryStream<Path> entries = Files.newDirectoryStream(gameDir))
+                        {
+                            for (Path entry : entries)
+                            {
+                                if (!entry.getFileName().toString().startsWith("Client.backup.")) {
+                                    FileTree.delete(entry);
+                                }
+                            }
+                        }
+                        FileTree.move(backupDir, gameDir);
                         publish("Backup restored successfully");
                     } catch (Exception restoreError) {
                         throw new IOException("Failed to restore backup: " + restoreError.getMessage(), e);
@@ -503,85 +550,6 @@ public class ModManagerDialog extends JDialog
         return selectedGameVersion;
     }
 
-    private void copyDirectory(Path source, Path target) throws IOException
-    {
-        Files.walk(source).forEach(sourcePath ->
-        {
-            try {
-                Path relative = source.relativize(sourcePath);
-                String relativeStr = relative.toString();
-
-                if (relativeStr.startsWith("Client.backup.")) {
-                    return;
-                }
-
-                Path targetPath = target.resolve(relative);
-
-                if (Files.isDirectory(sourcePath)) {
-                    Files.createDirectories(targetPath);
-                } else {
-                    Files.createDirectories(targetPath.getParent());
-                    Files.copy(sourcePath, targetPath,
-                            StandardCopyOption.REPLACE_EXISTING,
-                            StandardCopyOption.COPY_ATTRIBUTES);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to copy: " + sourcePath, e);
-            }
-        });
-    }
-
-    private void copyDirectoryContents(Path source, Path target) throws IOException
-    {
-        Files.walk(source).forEach(sourcePath ->
-        {
-            try
-            {
-                Path relativePath = source.relativize(sourcePath);
-
-                if (relativePath.toString().isEmpty()) {
-                    return;
-                }
-
-                Path targetPath = target.resolve(relativePath);
-
-                if (Files.isDirectory(sourcePath))
-                {
-                    Files.createDirectories(targetPath);
-                }
-                else
-                {
-                    Files.createDirectories(targetPath.getParent());
-                    Files.copy(sourcePath, targetPath,
-                            StandardCopyOption.REPLACE_EXISTING,
-                            StandardCopyOption.COPY_ATTRIBUTES);
-                }
-            }
-            catch (IOException e)
-            {
-                throw new RuntimeException("Failed to copy: " + sourcePath, e);
-            }
-        });
-    }
-
-    private void deleteDirectory(Path directory) throws IOException
-    {
-        if (!Files.exists(directory)) {
-            return;
-        }
-
-        Files.walk(directory)
-                .sorted(java.util.Comparator.reverseOrder())
-                .forEach(path ->
-                {
-                    try {
-                        Files.delete(path);
-                    } catch (IOException e) {
-                        System.err.println("Failed to delete: " + path + " - " + e.getMessage());
-                    }
-                });
-    }
-
     private void importJarFiles(List<File> files)
     {
         List<String> imported = new ArrayList<>();
@@ -622,6 +590,8 @@ public class ModManagerDialog extends JDialog
 
                 Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
                 imported.add(file.getName());
+
+                applyModChange(file.getName(), modManager.refreshMod(file.getName()));
             }
             catch (IOException e)
             {
@@ -632,7 +602,6 @@ public class ModManagerDialog extends JDialog
 
         if (!imported.isEmpty())
         {
-            loadInstalledMods();
             statusLabel.setText("Imported " + imported.size() + " mod(s)");
         }
 
@@ -1159,25 +1128,36 @@ public class ModManagerDialog extends JDialog
 
     private void installSelectedMod()
     {
-        CurseForgeAPI.Mod selected = cfList.getSelectedValue();
-        if (selected == null) {
+        List<CurseForgeAPI.Mod> selected = new ArrayList<>(cfList.getSelectedValuesList());
+        if (selected.isEmpty()) {
             return;
         }
 
-        List<ModManager.InstalledMod> installed = modManager.getInstalledMods();
-
-        boolean alreadyInstalled = installed.stream()
-                .anyMatch(m -> m.curseForgeId == selected.id);
+        List<CurseForgeAPI.Mod> alreadyInstalled = new ArrayList<>();
+        for (CurseForgeAPI.Mod mod : selected)
+        {
+            if (installedMods.stream().anyMatch(m -> m.curseForgeId == mod.id)) {
+                alreadyInstalled.add(mod);
+            }
+        }
 
-        if (alreadyInstalled)
+        if (!alreadyInstalled.isEmpty())
         {
+            String message = selected.size() == 1
+                    ? "Mod \"" + selected.get(0).name + "\" is already installed.\nReinstall?"
+                    : alreadyInstalled.size() + " of the selected mods are already installed.\nReinstall them?";
+
             int result = JOptionPane.showConfirmDialog(this,
-                    "Mod \"" + selected.name + "\" is already installed.\nReinstall?",
+                    message,
                     "Already Installed",
                     JOptionPane.YES_NO_OPTION,
                     JOptionPane.QUESTION_MESSAGE);
 
-            if (result != JOptionPane.YES_OPTION) return;
+            if (result != JOptionPane.YES_OPTION)
+            {
+                selected.removeAll(alreadyInstalled);
+                if (selected.isEmpty()) return;
+            }
         }
 
         cfDownloadButton.setEnabled(false);
@@ -1187,11 +1167,16 @@ public class ModManagerDialog extends JDialog
         cfProgressBar.setIndeterminate(true);
         cfProgressBar.setString("Loading...");
 
-        SwingWorker<CurseForgeAPI.ModFile, Void> worker = new SwingWorker<>()
+        SwingWorker<Map<Integer, CurseForgeAPI.ModFile>, Void> worker = new SwingWorker<>()
         {
             @Override
-            protected CurseForgeAPI.ModFile doInBackground() throws Exception {
-                return CurseForgeAPI.getLatestFile(selected.id);
+            protected Map<Integer, CurseForgeAPI.ModFile> doInBackground() throws Exception
+            {
+                List<Integer> ids = new ArrayList<>();
+                for (CurseForgeAPI.Mod mod : selected) {
+                    ids.add(mod.id);
+                }
+                return CurseForgeAPI.getLatestFiles(ids);
             }
 
             @Override
@@ -1199,9 +1184,25 @@ public class ModManagerDialog extends JDialog
             {
                 try
                 {
-                    CurseForgeAPI.ModFile file = get();
+                    Map<Integer, CurseForgeAPI.ModFile> files = get();
+
+                    List<ModManager.InstallRequest> requests = new ArrayList<>();
+                    Map<ModManager.InstallRequest, CurseForgeAPI.Mod> mods = new HashMap<>();
+
+                    for (CurseForgeAPI.Mod mod : selected)
+                    {
+                        CurseForgeAPI.ModFile file = files.get(mod.id);
+                        if (file == null) continue;
+
+                        String iconUrl = (mod.logo != null && mod.logo.thumbnailUrl != null)
+                                ? mod.logo.thumbnailUrl : null;
+
+                        ModManager.InstallRequest request = new ModManager.InstallRequest(file, mod.id, iconUrl);
+                        requests.add(request);
+                        mods.put(request, mod);
+                    }
 
-                    if (file == null)
+                    if (requests.isEmpty())
                     {
                         cfProgressBar.setVisible(false);
                         cfStatusLabel.setText("No files available");
@@ -1210,7 +1211,7 @@ public class ModManagerDialog extends JDialog
                         return;
                     }
 
-                    startDownload(selected, file);
+                    startDownload(requests, mods, selected.size() - requests.size());
                 }
                 catch (Exception ex)
                 {
@@ -1225,95 +1226,119 @@ public class ModManagerDialog extends JDialog
         worker.execute();
     }
 
-    private void startDownload(CurseForgeAPI.Mod mod, CurseForgeAPI.ModFile file)
+    // All selected mods download together; the installed list follows each
+    // jar through the watcher, so nothing here reloads it
+    private void startDownload(List<ModManager.InstallRequest> requests,
+                               Map<ModManager.InstallRequest, CurseForgeAPI.Mod> mods, int withoutFiles)
     {
         cfProgressBar.setIndeterminate(false);
         cfProgressBar.setValue(0);
         cfProgressBar.setString("0%");
         cfProgressBar.setPreferredSize(new Dimension(300, 25));
-        cfStatusLabel.setText("Downloading " + file.fileName + "...");
+        cfStatusLabel.setText(requests.size() == 1
+                ? "Downloading " + requests.get(0).file.fileName + "..."
+                : "Downloading " + requests.size() + " mods...");
 
-        SwingWorker<Void, Double> downloadWorker = new SwingWorker<>()
-        {
-            private volatile String statusMessage = "";
+        AtomicBoolean progressQueued = new AtomicBoolean();
+        String[] latest = new String[1];
+        double[] latestPercent = new double[1];
 
-            @Override
-            protected Void doInBackground() throws Exception {
-                String iconUrl = (mod.logo != null && mod.logo.thumbnailUrl != null)
-                        ? mod.logo.thumbnailUrl : null;
+        modManager.installAll(requests, (request, percent, message, totalPercent, finished, total) ->
+        {
+            synchronized (latest)
+            {
+                latest[0] = total == 1
+                        ? String.format("%.0f%% - %s", totalPercent, message)
+                        : String.format("%.0f%% - %d/%d done", totalPercent, finished, total);
+                latestPercent[0] = totalPercent;
+            }
 
-                modManager.downloadAndInstall(file, mod.id, iconUrl, (percent, message) -> {
-                    statusMessage = message;
-                    publish(percent);
+            // Several downloads report at once, the bar is updated once per EDT turn
+            if (progressQueued.compareAndSet(false, true))
+            {
+                SwingUtilities.invokeLater(() ->
+                {
+                    progressQueued.set(false);
+                    synchronized (latest)
+                    {
+                        cfProgressBar.setValue((int) latestPercent[0]);
+                        cfProgressBar.setString(latest[0]);
+                    }
                 });
-                return null;
             }
+        }).whenComplete((failures, error) -> SwingUtilities.invokeLater(() ->
+        {
+            cfProgressBar.setVisible(false);
+            cfDownloadButton.setEnabled(true);
+            cfInfoButton.setEnabled(true);
 
-            @Override
-            protected void process(List<Double> chunks)
+            if (error != null || !failures.isEmpty())
             {
-                if (!chunks.isEmpty()) {
-                    double latest = chunks.get(chunks.size() - 1);
-                    cfProgressBar.setValue((int) latest);
-                    cfProgressBar.setString(String.format("%.0f%% - %s", latest, statusMessage));
+                String details;
+                if (error != null) {
+                    details = error.getMessage();
+                }
+                else
+                {
+                    List<String> failed = new ArrayList<>();
+                    failures.forEach((request, e) -> failed.add(mods.get(request).name + ": " + e.getMessage()));
+                    details = String.join("\n", failed);
                 }
-            }
 
-            @Override
-            protected void done()
-            {
-                try {
-                    get();
-                    cfProgressBar.setVisible(false);
-                    cfDownloadButton.setEnabled(true);
-                    cfInfoButton.setEnabled(true);
-                    cfStatusLabel.setText("Installed: " + mod.name);
+                int installed = error != null ? 0 : requests.size() - failures.size();
+                cfStatusLabel.setText(requests.size() == 1
+                        ? "Failed: " + details
+                        : "Installed " + installed + " of " + requests.size() + " mods");
 
-                    loadInstalledMods();
+                JOptionPane.showMessageDialog(
+                        ModManagerDialog.this,
+                        "Installation failed:\n" + details,
+                        "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-                    if (tabbedPane.getSelectedIndex() != 0)
-                    {
-                        int result = JOptionPane.showOptionDialog(
-                                ModManagerDialog.this,
-                                "Successfully installed:\n" + mod.name + "\n\nView installed mods?",
-                                "Success",
-                                JOptionPane.YES_NO_OPTION,
-                                JOptionPane.INFORMATION_MESSAGE,
-                                null,
-                                new String[]{"View", "Stay"},
-                                "View");
-
-                        if (result == JOptionPane.YES_OPTION) {
-                            tabbedPane.setSelectedIndex(0);
-                        }
-                    }
-                    else
-                    {
-                        JOptionPane.showMessageDialog(
-                                ModManagerDialog.this,
-                                "Successfully installed:\n" + mod.name,
-                                "Success",
-                                JOptionPane.INFORMATION_MESSAGE);
-                    }
-                }
-                catch (Exception ex)
-                {
-                    cfProgressBar.setVisible(false);
-                    cfDownloadButton.setEnabled(true);
-                    cfInfoButton.setEnabled(true);
+            String names;
+            if (requests.size() == 1)
+            {
+                names = mods.get(requests.get(0)).name;
+                cfStatusLabel.setText("Installed: " + names);
+            }
+            else
+            {
+                names = requests.size() + " mods";
+                cfStatusLabel.setText("Installed " + names);
+            }
 
-                    cfStatusLabel.setText("Failed: " + ex.getMessage());
+            if (withoutFiles > 0) {
+                names += "\n(" + withoutFiles + " mod(s) had no files available)";
+            }
 
-                    JOptionPane.showMessageDialog(
-                            ModManagerDialog.this,
-                            "Installation failed:\n" + ex.getMessage(),
-                            "Error",
-                            JOptionPane.ERROR_MESSAGE);
+            if (tabbedPane.getSelectedIndex() != 0)
+            {
+                int result = JOptionPane.showOptionDialog(
+                        ModManagerDialog.this,
+                        "Successfully installed:\n" + names + "\n\nView installed mods?",
+                        "Success",
+                        JOptionPane.YES_NO_OPTION,
+                        JOptionPane.INFORMATION_MESSAGE,
+                        null,
+                        new String[]{"View", "Stay"},
+                        "View");
+
+                if (result == JOptionPane.YES_OPTION) {
+                    tabbedPane.setSelectedIndex(0);
                 }
             }
-        };
-
-        downloadWorker.execute();
+            else
+            {
+                JOptionPane.showMessageDialog(
+                        ModManagerDialog.this,
+                        "Successfully installed:\n" + names,
+                        "Success",
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        }));
     }
 
     private void showModDetails()
@@ -1668,7 +1693,7 @@ public class ModManagerDialog extends JDialog
         JPanel topPanel = new JPanel(new BorderLayout(10, 0));
         topPanel.setOpaque(false);
 
-        JTextField installedSearch = new JTextField();
+        installedSearch = new JTextField();
         installedSearch.setBackground(new Color(26, 26, 32));
         installedSearch.setForeground(Color.WHITE);
         installedSearch.setCaretColor(new Color(255, 168, 69));
@@ -1711,19 +1736,15 @@ public class ModManagerDialog extends JDialog
         installedSearch.addKeyListener(new KeyAdapter() {
             @Override
             public void keyReleased(KeyEvent e) {
-                String filter = installedSearch.getText().toLowerCase().trim();
                 installedModel.clear();
 
-                List<ModManager.InstalledMod> allMods = modManager.getInstalledMods();
-                for (ModManager.InstalledMod mod : allMods) {
-                    if (filter.isEmpty() ||
-                            mod.name.toLowerCase().contains(filter) ||
-                            mod.author.toLowerCase().contains(filter)) {
+                for (ModManager.InstalledMod mod : installedMods) {
+                    if (matchesInstalledFilter(mod)) {
                         installedModel.addElement(mod);
                     }
                 }
 
-                statusLabel.setText("Showing " + installedModel.size() + " of " + allMods.size() + " mods");
+                statusLabel.setText("Showing " + installedModel.size() + " of " + installedMods.size() + " mods");
             }
         });
 
@@ -1865,14 +1886,39 @@ public class ModManagerDialog extends JDialog
         return button;
     }
 
+    // Batches are shown as they arrive and kept in name order; batches of a
+    // load that has since been superseded are dropped
     private void loadInstalledMods()
     {
         statusLabel.setText("Loading...");
 
-        modManager.getInstalledModsAsync()
+        int generation = ++installedLoadGeneration;
+        installedMods.clear();
+        installedModel.clear();
+
+        modManager.getInstalledModsAsync(batch -> SwingUtilities.invokeLater(() ->
+                {
+                    if (generation != installedLoadGeneration) return;
+
+                    for (ModManager.InstalledMod mod : batch) {
+                        insertInstalledMod(mod);
+                    }
+
+                    statusLabel.setText("Loading... " + installedMods.size() + " mod(s)");
+                }))
                 .thenAccept(mods -> SwingUtilities.invokeLater(() ->
                 {
+                    if (generation != installedLoadGeneration) return;
+
+                    installedMods.clear();
+                    installedMods.addAll(mods);
+
                     installedModel.clear();
+                    for (ModManager.InstalledMod mod : mods) {
+                        if (matchesInstalledFilter(mod)) {
+                            installedModel.addElement(mod);
+                        }
+                    }
 
                     if (mods.isEmpty())
                     {
@@ -1880,10 +1926,6 @@ public class ModManagerDialog extends JDialog
                     }
                     else
                     {
-                        for (ModManager.InstalledMod mod : mods) {
-                            installedModel.addElement(mod);
-                        }
-
                         statusLabel.setText(mods.size() + " mod(s)");
 
                         installedList.revalidate();
@@ -1907,16 +1949,66 @@ public class ModManagerDialog extends JDialog
                 });
     }
 
+    // Changes reach the list one jar at a time, from the watcher or right
+    // after our own imports and deletions; applying one twice is harmless
+    private void applyModChange(String fileName, ModManager.InstalledMod mod)
+    {
+        installedMods.removeIf(m -> m.id.equals(fileName));
+
+        for (int i = installedModel.size() - 1; i >= 0; i--)
+        {
+            if (installedModel.getElementAt(i).id.equals(fileName)) {
+                installedModel.remove(i);
+            }
+        }
+
+        if (mod != null) {
+            insertInstalledMod(mod);
+        }
+    }
+
+    private void insertInstalledMod(ModManager.InstalledMod mod)
+    {
+        int pos = Collections.binarySearch(installedMods, mod, ModManager.BY_NAME);
+        installedMods.add(pos < 0 ? -pos - 1 : pos, mod);
+
+        if (!matchesInstalledFilter(mod)) return;
+
+        int low = 0;
+        int high = installedModel.size();
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (ModManager.BY_NAME.compare(installedModel.getElementAt(middle), mod) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        installedModel.add(low, mod);
+    }
+
+    private boolean matchesInstalledFilter(ModManager.InstalledMod mod)
+    {
+        String filter = installedSearch.getText().toLowerCase().trim();
+
+        return filter.isEmpty() ||
+                mod.name.toLowerCase().contains(filter) ||
+                mod.author.toLowerCase().contains(filter);
+    }
+
     private void deleteSelectedMods()
     {
-        int[] selectedIndices = installedList.getSelectedIndices();
+        // Taken before the confirmation, the watcher may reorder the list
+        // while it is open
+        List<ModManager.InstalledMod> selectedMods = installedList.getSelectedValuesList();
 
-        if (selectedIndices.length == 0) {
+        if (selectedMods.isEmpty()) {
             return;
         }
 
         int result = JOptionPane.showConfirmDialog(this,
-                "Delete " + selectedIndices.length + " selected mod(s)?",
+                "Delete " + selectedMods.size() + " selected mod(s)?",
                 "Confirm Deletion",
                 JOptionPane.YES_NO_OPTION,
                 JOptionPane.WARNING_MESSAGE);
@@ -1926,13 +2018,15 @@ public class ModManagerDialog extends JDialog
             List<String> failedDeletions = new ArrayList<>();
             List<String> successfulDeletions = new ArrayList<>();
 
-            for (int index : selectedIndices)
+            for (ModManager.InstalledMod mod : selectedMods)
             {
-                ModManager.InstalledMod mod = installedModel.getElementAt(index);
                 try
                 {
                     modManager.uninstallMod(mod.id);
                     successfulDeletions.add(mod.name);
+
+                    // Not left to the watcher, which may only poll
+                    applyModChange(mod.id, null);
                 }
                 catch (Exception e)
                 {
@@ -1941,8 +2035,6 @@ public class ModManagerDialog extends JDialog
                 }
             }
 
-            loadInstalledMods();
-
             if (!failedDeletions.isEmpty())
             {
                 JOptionPane.showMessageDialog(this,
@@ -1969,20 +2061,28 @@ public class ModManagerDialog extends JDialog
             List<ModManager.InstalledMod> mods = modManager.getInstalledMods();
             List<String> updates = new ArrayList<>();
 
+            Set<Integer> modIds = new LinkedHashSet<>();
+            for (ModManager.InstalledMod mod : mods)
+            {
+                if (mod.curseForgeId > 0 && mod.fileId > 0) {
+                    modIds.add(mod.curseForgeId);
+                }
+            }
+
+            Map<Integer, CurseForgeAPI.ModFile> latestFiles;
+            try {
+                latestFiles = CurseForgeAPI.getLatestFiles(modIds);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+
             for (ModManager.InstalledMod mod : mods)
             {
                 if (mod.curseForgeId > 0 && mod.fileId > 0)
                 {
-                    try
-                    {
-                        CurseForgeAPI.ModFile latest = CurseForgeAPI.getLatestFile(mod.curseForgeId);
-                        if (latest != null && latest.id != mod.fileId) {
-                            updates.add(mod.name);
-                        }
-                    }
-                    catch (Exception e)
-                    {
-                        // ...
+                    CurseForgeAPI.ModFile latest = latestFiles.get(mod.curseForgeId);
+                    if (latest != null && latest.id != mod.fileId) {
+                        updates.add(mod.name);
                     }
                 }
             }
@@ -2010,7 +2110,14 @@ public class ModManagerDialog extends JDialog
                         "Updates Available",
                         JOptionPane.INFORMATION_MESSAGE);
             }
-        }));
+        })).exceptionally(ex ->
+        {
+            SwingUtilities.invokeLater(() -> {
+                checkUpdatesButton.setEnabled(true);
+                statusLabel.setText("Error: " + ex.getMessage());
+            });
+            return null;
+        });
     }
 
     private void openModsFolder()
@@ -2275,6 +2382,17 @@ public class ModManagerDialog extends JDialog
     private static class InstalledModRenderer extends DefaultListCellRenderer
     {
         private static final Map<Integer, ImageIcon> imageCache = CurseForgeModRenderer.imageCache;
+        private static final Set<String> loadingIcons = ConcurrentHashMap.newKeySet();
+        private static final Set<String> failedIcons = ConcurrentHashMap.newKeySet();
+
+        // Icons are fetched once each, a few at a time, however often the
+        // list repaints while they load
+        private static final ExecutorService iconLoader = Executors.newFixedThreadPool(4, r ->
+        {
+            Thread thread = new Thread(r, "mod-icon-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         @Override
         public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus)
@@ -2305,7 +2423,7 @@ public class ModManagerDialog extends JDialog
                 imgLabel.setHorizontalAlignment(SwingConstants.CENTER);
                 imagePanel.add(imgLabel, BorderLayout.CENTER);
             }
-            else if (mod.iconUrl != null && !mod.iconUrl.isEmpty())
+            else if (mod.iconUrl != null && !mod.iconUrl.isEmpty() && !failedIcons.contains(mod.iconUrl))
             {
                 ImageIcon cached = CurseForgeModRenderer.customIconCache.get(mod.iconUrl);
                 if (cached != null)
@@ -2321,27 +2439,37 @@ public class ModManagerDialog extends JDialog
                     loadingLabel.setForeground(new Color(255, 168, 69, 80));
                     imagePanel.add(loadingLabel, BorderLayout.CENTER);
 
-                    CompletableFuture.runAsync(() ->
+                    String iconUrl = mod.iconUrl;
+                    if (loadingIcons.add(iconUrl))
                     {
-                        try
+                        CompletableFuture.runAsync(() ->
                         {
-                            URL url = new URL(mod.iconUrl);
-                            java.awt.image.BufferedImage img = javax.imageio.ImageIO.read(url);
-
-                            if (img != null)
+                            try
                             {
-                                ImageIcon icon = new ImageIcon(img);
-                                CurseForgeModRenderer.customIconCache.put(mod.iconUrl, icon);
-
-                                SwingUtilities.invokeLater(() -> {
-                                    list.repaint();
-                                });
+                                URL url = new URL(iconUrl);
+                                java.awt.image.BufferedImage img = javax.imageio.ImageIO.read(url);
+
+                                if (img != null)
+                                {
+                                    ImageIcon icon = new ImageIcon(img);
+                                    CurseForgeModRenderer.customIconCache.put(iconUrl, icon);
+                                    loadingIcons.remove(iconUrl);
+                                }
+                                else
+                                {
+                                    failedIcons.add(iconUrl);
+                                }
+                            } catch (Exception e)
+                            {
+                                // A broken URL is not asked for again on every repaint
+                                failedIcons.add(iconUrl);
                             }
-                        } catch (Exception e)
-                        {
-                            // ...
-                        }
-                    });
+
+                            SwingUtilities.invokeLater(() -> {
+                                list.repaint();
+                            });
+                        }, iconLoader);
+                    }
                 }
             }
             else
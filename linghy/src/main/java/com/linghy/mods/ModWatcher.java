@@ -0,0 +1,247 @@
+package com.linghy.mods;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Follows the mods folder so the mod list only reloads what changed. Events
+// are collected until the folder has been quiet for a moment, which folds a
+// jar being copied in, renamed into place and given its .cfmeta into one
+// refresh of that jar. On filesystems where inotify sees nothing, such as
+// network shares, or when no WatchService can be had, the folder is polled
+// and compared by size and mtime instead
+public class ModWatcher implements AutoCloseable
+{
+    private static final long DEBOUNCE_MS = 300;
+    private static final long POLL_INTERVAL_MS = 2000;
+    private static final Set<String> REMOTE_FILESYSTEMS = Set.of(
+            "nfs", "nfs4", "cifs", "smb", "smbfs", "smb2", "9p", "fuse.sshfs", "afpfs", "webdav");
+
+    public interface Listener
+    {
+        // Called on the watcher thread; mod is null when the jar is gone
+        void onModChanged(String fileName, ModManager.InstalledMod mod);
+
+        // Events were lost, the whole folder has to be read again
+        void onRescanNeeded();
+    }
+
+    private final ModManager modManager;
+    private final Path modsDir;
+    private final Listener listener;
+    private final Set<String> pending = new HashSet<>();
+
+    private volatile boolean closed;
+    private Thread thread;
+    private WatchService watchService;
+    private Map<String, String> snapshot;
+    private long lastEvent;
+
+    public ModWatcher(ModManager modManager, Listener listener)
+    {
+        this.modManager = modManager;
+        this.modsDir = modManager.getModsDir();
+        this.listener = listener;
+    }
+
+    public synchronized void start()
+    {
+        if (thread != null) return;
+
+        thread = new Thread(this::run, "mod-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+
+        Thread running;
+        synchronized (this) {
+            running = thread;
+        }
+        if (running != null) {
+            running.interrupt();
+        }
+    }
+
+    private void run()
+    {
+        try
+        {
+            if (!openWatchService())
+            {
+                System.out.println("Polling " + modsDir + " for mod changes");
+                snapshot = takeSnapshot();
+            }
+
+            while (!closed)
+            {
+                if (watchService != null) {
+                    waitForEvents();
+                } else {
+                    poll();
+                }
+
+                if (!pending.isEmpty() && System.currentTimeMillis() - lastEvent >= DEBOUNCE_MS) {
+                    flush();
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+        finally {
+            closeWatchService();
+        }
+    }
+
+    private boolean openWatchService()
+    {
+        try
+        {
+            String type = Files.getFileStore(modsDir).type().toLowerCase();
+            if (REMOTE_FILESYSTEMS.contains(type)) {
+                return false;
+            }
+
+            watchService = modsDir.getFileSystem().newWatchService();
+            modsDir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            System.err.println("Cannot watch mods folder: " + e.getMessage());
+            closeWatchService();
+            return false;
+        }
+    }
+
+    private void waitForEvents() throws InterruptedException
+    {
+        WatchKey key = pending.isEmpty()
+                ? watchService.take()
+                : watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+
+        if (key == null) return;
+
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+            {
+                pending.clear();
+                listener.onRescanNeeded();
+                continue;
+            }
+
+            changed(event.context().toString());
+        }
+
+        // The folder itself went away, keep going by polling so it is picked
+        // up again once it is recreated
+        if (!key.reset())
+        {
+            System.err.println("Mods folder is no longer watchable, polling instead");
+            closeWatchService();
+            snapshot = takeSnapshot();
+        }
+    }
+
+    private void poll() throws InterruptedException
+    {
+        Thread.sleep(pending.isEmpty() ? POLL_INTERVAL_MS : DEBOUNCE_MS);
+
+        Map<String, String> current = takeSnapshot();
+
+        for (Map.Entry<String, String> entry : current.entrySet())
+        {
+            if (!entry.getValue().equals(snapshot.get(entry.getKey()))) {
+                changed(entry.getKey());
+            }
+        }
+        for (String name : snapshot.keySet())
+        {
+            if (!current.containsKey(name)) {
+                changed(name);
+            }
+        }
+
+        snapshot = current;
+    }
+
+    // A sidecar change refreshes its jar; downloads in progress and anything
+    // else in the folder are ignored
+    private void changed(String name)
+    {
+        String fileName = name.endsWith(".jar.cfmeta")
+                ? name.substring(0, name.length() - ".cfmeta".length())
+                : name;
+
+        if (!fileName.endsWith(".jar")) return;
+
+        pending.add(fileName);
+        lastEvent = System.currentTimeMillis();
+    }
+
+    private void flush()
+    {
+        List<String> names = new ArrayList<>(pending);
+        pending.clear();
+
+        for (String fileName : names)
+        {
+            if (closed) return;
+            listener.onModChanged(fileName, modManager.refreshMod(fileName));
+        }
+    }
+
+    private Map<String, String> takeSnapshot()
+    {
+        Map<String, String> files = new HashMap<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(modsDir))
+        {
+            for (Path file : stream)
+            {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(".jar") && !name.endsWith(".jar.cfmeta")) continue;
+
+                try
+                {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    files.put(name, attrs.size() + ":" + attrs.lastModifiedTime().toMillis());
+                }
+                catch (IOException ignored) {
+                    // Gone while listing
+                }
+            }
+        }
+        catch (NoSuchFileException e) {
+            // Folder removed, every mod counts as gone until it is back
+        }
+        catch (IOException e)
+        {
+            System.err.println("Failed to poll mods folder: " + e.getMessage());
+            return snapshot != null ? snapshot : files;
+        }
+
+        return files;
+    }
+
+    private void closeWatchService()
+    {
+        if (watchService == null) return;
+
+        try {
+            watchService.close();
+        } catch (IOException ignored) {}
+        watchService = null;
+    }
+}
@@ -12,18 +12,43 @@ public final class CFHttp
             .connectTimeout(Duration.ofSeconds(10))
             .build();
 
+    private static volatile String apiKey;
+
     public static HttpResponse<String> get(String path) throws Exception
     {
         HttpRequest req = HttpRequest.newBuilder()
                 .uri(URI.create(BASE + path))
                 .header("Accept", "application/json")
-                .header("x-api-key", CurseForgeAPI.getApiKey())
+                .header("x-api-key", apiKey())
                 .GET()
                 .build();
 
         return CLIENT.send(req, HttpResponse.BodyHandlers.ofString());
     }
 
+    public static HttpResponse<String> post(String path, String json) throws Exception
+    {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(BASE + path))
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .header("x-api-key", apiKey())
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+
+        return CLIENT.send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // Decrypting the key on every request showed up in update checks
+    private static String apiKey() throws Exception
+    {
+        String key = apiKey;
+        if (key == null) {
+            apiKey = key = CurseForgeAPI.getApiKey();
+        }
+        return key;
+    }
+
     public static HttpResponse<Path> download(String url, Path out) throws Exception
     {
         HttpRequest req = HttpRequest.newBuilder()
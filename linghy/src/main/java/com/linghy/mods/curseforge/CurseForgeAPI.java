@@ -4,6 +4,7 @@ import com.google.gson.*;
 import com.google.gson.annotations.SerializedName;
 import com.linghy.utils.CryptoUtil;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -13,14 +14,30 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class CurseForgeAPI
 {
     public static final int GAME_ID = 70216; // hytale game id
     private static final Gson gson = new GsonBuilder().create();
 
+    private static final int BULK_BATCH = 100;
+    private static final int PER_MOD_PARALLELISM = 4;
+    private static final long LATEST_FILE_TTL_MS = 10 * 60 * 1000;
+
+    private static final Map<Integer, CachedFile> latestFiles = new ConcurrentHashMap<>();
+
+    private static class CachedFile
+    {
+        final ModFile file;
+        final long fetchedAt = System.currentTimeMillis();
+
+        CachedFile(ModFile file) {
+            this.file = file;
+        }
+    }
+
     public enum SortField
     {
         FEATURED(1),
@@ -108,13 +125,174 @@ public class CurseForgeAPI
     {
         List<ModFile> files = getModFiles(modId);
         if (files.isEmpty()) return null;
-        ModFile latest = files.get(0);
-        for (ModFile f : files) {
-            if (f.fileDate.getTime() > latest.fileDate.getTime()) {
+        return newest(files);
+    }
+
+    // POST mods, up to BULK_BATCH ids per request
+    public static List<Mod> getMods(Collection<Integer> modIds) throws Exception
+    {
+        List<Mod> mods = new ArrayList<>();
+        for (List<Integer> batch : batches(modIds))
+        {
+            JsonObject body = new JsonObject();
+            body.add("modIds", gson.toJsonTree(batch));
+
+            ApiResponse<Mod[]> apiResp = gson.fromJson(post("mods", body), ApiResponseModArray.class);
+            if (apiResp != null && apiResp.data != null) {
+                mods.addAll(Arrays.asList(apiResp.data));
+            }
+        }
+        return mods;
+    }
+
+    // POST mods/files, up to BULK_BATCH ids per request
+    public static List<ModFile> getFiles(Collection<Integer> fileIds) throws Exception
+    {
+        List<ModFile> files = new ArrayList<>();
+        for (List<Integer> batch : batches(fileIds))
+        {
+            JsonObject body = new JsonObject();
+            body.add("fileIds", gson.toJsonTree(batch));
+
+            ApiResponse<ModFile[]> apiResp = gson.fromJson(post("mods/files", body), ApiResponseModFileArray.class);
+            if (apiResp != null && apiResp.data != null) {
+                files.addAll(Arrays.asList(apiResp.data));
+            }
+        }
+        return files;
+    }
+
+    // Newest file per mod, the same answer getLatestFile gives one mod at a
+    // time. The mods come in bulk with their latest files attached, a main
+    // file missing from those is fetched in bulk too, and only mods the bulk
+    // answer says nothing about are asked one by one, a few in parallel.
+    // Answers are kept for LATEST_FILE_TTL_MS; mods without files map to null
+    public static Map<Integer, ModFile> getLatestFiles(Collection<Integer> modIds) throws Exception
+    {
+        Map<Integer, ModFile> result = new HashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+        long now = System.currentTimeMillis();
+
+        for (int modId : modIds)
+        {
+            CachedFile cached = latestFiles.get(modId);
+            if (cached != null && now - cached.fetchedAt < LATEST_FILE_TTL_MS) {
+                result.put(modId, cached.file);
+            } else {
+                missing.add(modId);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<Integer, ModFile> fetched = new HashMap<>();
+        Map<Integer, Integer> mainFiles = new HashMap<>();
+
+        try
+        {
+            for (Mod mod : getMods(missing))
+            {
+                if (mod.latestFiles == null || mod.latestFiles.isEmpty()) continue;
+
+                ModFile latest = newest(mod.latestFiles);
+                fetched.put(mod.id, latest);
+
+                if (mod.mainFileId > 0 && mod.latestFiles.stream().noneMatch(f -> f.id == mod.mainFileId)) {
+                    mainFiles.put(mod.mainFileId, mod.id);
+                }
+            }
+
+            if (!mainFiles.isEmpty())
+            {
+                for (ModFile file : getFiles(mainFiles.keySet()))
+                {
+                    Integer modId = mainFiles.get(file.id);
+                    if (modId != null && file.fileDate != null) {
+                        fetched.merge(modId, file, (a, b) -> newest(List.of(a, b)));
+                    }
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            System.err.println("Bulk update check failed, asking per mod: " + e.getMessage());
+        }
+
+        List<Integer> perMod = new ArrayList<>();
+        for (int modId : missing)
+        {
+            if (!fetched.containsKey(modId)) {
+                perMod.add(modId);
+            }
+        }
+
+        if (!perMod.isEmpty())
+        {
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(PER_MOD_PARALLELISM, perMod.size()));
+            try
+            {
+                Map<Integer, Future<ModFile>> futures = new LinkedHashMap<>();
+                for (int modId : perMod) {
+                    futures.put(modId, pool.submit(() -> getLatestFile(modId)));
+                }
+
+                for (Map.Entry<Integer, Future<ModFile>> entry : futures.entrySet())
+                {
+                    try {
+                        fetched.put(entry.getKey(), entry.getValue().get());
+                    } catch (ExecutionException e) {
+                        System.err.println("Failed to check mod " + entry.getKey() + ": " + e.getCause().getMessage());
+                    }
+                }
+            }
+            finally {
+                pool.shutdownNow();
+            }
+        }
+
+        for (Map.Entry<Integer, ModFile> entry : fetched.entrySet()) {
+            latestFiles.put(entry.getKey(), new CachedFile(entry.getValue()));
+        }
+
+        result.putAll(fetched);
+        return result;
+    }
+
+    // Files without a date are skipped, the first file stands in when none has one
+    private static ModFile newest(List<ModFile> files)
+    {
+        ModFile latest = null;
+        for (ModFile f : files)
+        {
+            if (f.fileDate == null) continue;
+
+            if (latest == null || f.fileDate.getTime() > latest.fileDate.getTime()) {
                 latest = f;
             }
         }
-        return latest;
+        return latest != null ? latest : files.get(0);
+    }
+
+    private static String post(String path, JsonObject body) throws Exception
+    {
+        HttpResponse<String> resp = CFHttp.post(path, gson.toJson(body));
+        if (resp.statusCode() != 200) {
+            throw new IOException("CurseForge returned HTTP " + resp.statusCode() + " for " + path);
+        }
+        return resp.body();
+    }
+
+    private static List<List<Integer>> batches(Collection<Integer> ids)
+    {
+        List<Integer> all = new ArrayList<>(ids);
+        List<List<Integer>> batches = new ArrayList<>();
+
+        for (int from = 0; from < all.size(); from += BULK_BATCH) {
+            batches.add(all.subList(from, Math.min(from + BULK_BATCH, all.size())));
+        }
+        return batches;
     }
 
     public static void downloadFile(ModFile file, Path out) throws Exception {
@@ -147,6 +325,7 @@ public class CurseForgeAPI
         public String dateModified;
         public Logo logo;
         public List<Screenshot> screenshots;
+        public List<ModFile> latestFiles;
     }
 
     public static class Logo
@@ -186,6 +365,7 @@ public class CurseForgeAPI
     public static class ModFile
     {
         public int id;
+        public int modId;
         public String fileName;
         public String displayName;
         public String downloadUrl;
@@ -0,0 +1,117 @@
+package com.linghy.patches;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+public class BinaryFingerprint
+{
+    private static final int EDGE_BLOCK_SIZE = 64 * 1024;
+    private static final int SAMPLE_BLOCK_SIZE = 4 * 1024;
+    private static final int SAMPLE_BLOCKS = 32;
+
+    private final long size;
+    private final long modifiedTime;
+    private final String sampleHash;
+
+    public BinaryFingerprint(long size, long modifiedTime, String sampleHash)
+    {
+        this.size = size;
+        this.modifiedTime = modifiedTime;
+        this.sampleHash = sampleHash;
+    }
+
+    // Size, mtime and a CRC32C over the head, tail and evenly spaced blocks,
+    // so a fingerprint costs a few hundred KB of reads regardless of file size
+    public static BinaryFingerprint of(Path file) throws IOException
+    {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attrs.size();
+        CRC32C crc = new CRC32C();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(EDGE_BLOCK_SIZE);
+
+            sample(channel, buffer, 0, EDGE_BLOCK_SIZE, crc);
+
+            long step = size / (SAMPLE_BLOCKS + 1);
+            for (int i = 1; i <= SAMPLE_BLOCKS && step > 0; i++) {
+                sample(channel, buffer, step * i, SAMPLE_BLOCK_SIZE, crc);
+            }
+
+            sample(channel, buffer, Math.max(0, size - EDGE_BLOCK_SIZE), EDGE_BLOCK_SIZE, crc);
+        }
+
+        return new BinaryFingerprint(size, attrs.lastModifiedTime().toMillis(),
+                Long.toHexString(crc.getValue()));
+    }
+
+    private static void sample(FileChannel channel, ByteBuffer buffer, long position,
+                               int length, CRC32C crc) throws IOException
+    {
+        buffer.clear().limit(length);
+
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0) break;
+        }
+
+        buffer.flip();
+        crc.update(buffer);
+    }
+
+    // Cheap check that only stats the file
+    public boolean sameStat(Path file)
+    {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            return attrs.size() == size && attrs.lastModifiedTime().toMillis() == modifiedTime;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
+    public String getSampleHash() {
+        return sampleHash;
+    }
+
+    public String key() {
+        return size + "-" + modifiedTime + "-" + sampleHash;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BinaryFingerprint that = (BinaryFingerprint) o;
+        return size == that.size && modifiedTime == that.modifiedTime
+                && Objects.equals(sampleHash, that.sampleHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, modifiedTime, sampleHash);
+    }
+
+    @Override
+    public String toString() {
+        return key();
+    }
+}
@@ -1,9 +1,13 @@
 package com.linghy.patches;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BinaryPatcher
 {
@@ -55,6 +59,12 @@ public class BinaryPatcher
             throw new IllegalArgumentException("Size must be at least 1");
         }
 
+        writeBytes(file, offset, retBytes(size));
+        return true;
+    }
+
+    static byte[] retBytes(int size)
+    {
         byte[] patch = new byte[size];
         patch[0] = X86.RET[0]; // 0xC3
 
@@ -62,8 +72,7 @@ public class BinaryPatcher
             patch[i] = X86.NOP[0]; // 0x90
         }
 
-        writeBytes(file, offset, patch);
-        return true;
+        return patch;
     }
 
     public static boolean makeRETWithValue(Path file, long offset, int returnValue) throws IOException
@@ -85,11 +94,15 @@ public class BinaryPatcher
             throw new IllegalArgumentException("Count must be at least 1");
         }
 
+        writeBytes(file, offset, nopBytes(count));
+        return true;
+    }
+
+    static byte[] nopBytes(int count)
+    {
         byte[] nops = new byte[count];
         Arrays.fill(nops, X86.NOP[0]); // 0x90
-
-        writeBytes(file, offset, nops);
-        return true;
+        return nops;
     }
 
     public static boolean makeOptimalNOP(Path file, long offset, int count) throws IOException
@@ -158,15 +171,18 @@ public class BinaryPatcher
         writeBytes(file, offset, data);
     }
 
-    public static void writeDword(Path file, long offset, int value) throws IOException
+    public static void writeDword(Path file, long offset, int value) throws IOException {
+        writeBytes(file, offset, dwordBytes(value));
+    }
+
+    static byte[] dwordBytes(int value)
     {
-        byte[] data = {
+        return new byte[] {
                 (byte) (value & 0xFF),
                 (byte) ((value >> 8) & 0xFF),
                 (byte) ((value >> 16) & 0xFF),
                 (byte) ((value >> 24) & 0xFF)
         };
-        writeBytes(file, offset, data);
     }
 
     public static void writeQword(Path file, long offset, long value) throws IOException
@@ -285,6 +301,9 @@ public class BinaryPatcher
         public int contextBefore = 64;
         public int contextAfter = 64;
         public boolean findAll = false;
+        public int parallelism = 1;
+        public Set<String> sectionNames = null;
+        public ExecutableLayout.SectionKind sectionKind = null;
 
         public SearchConfig startAt(long offset) {
             this.startOffset = offset;
@@ -306,6 +325,47 @@ public class BinaryPatcher
             this.findAll = true;
             return this;
         }
+
+        public SearchConfig parallel() {
+            return parallel(Runtime.getRuntime().availableProcessors());
+        }
+
+        public SearchConfig parallel(int threads) {
+            this.parallelism = Math.max(1, threads);
+            return this;
+        }
+
+        public SearchConfig inSections(String... names) {
+            this.sectionNames = new LinkedHashSet<>(Arrays.asList(names));
+            return this;
+        }
+
+        public SearchConfig codeSections() {
+            this.sectionKind = ExecutableLayout.SectionKind.CODE;
+            return this;
+        }
+
+        public SearchConfig dataSections() {
+            this.sectionKind = ExecutableLayout.SectionKind.DATA;
+            return this;
+        }
+
+        public boolean hasSectionFilter() {
+            return sectionNames != null || sectionKind != null;
+        }
+
+        SearchConfig forRange(long start, long end)
+        {
+            SearchConfig copy = new SearchConfig();
+            copy.startOffset = start;
+            copy.maxSearchSize = end - start;
+            copy.bufferSize = bufferSize;
+            copy.contextBefore = contextBefore;
+            copy.contextAfter = contextAfter;
+            copy.findAll = findAll;
+            copy.parallelism = parallelism;
+            return copy;
+        }
     }
 
     public interface ProgressListener {
@@ -324,24 +384,56 @@ public class BinaryPatcher
     }
 
     public static List<PatternMatch> findAllPatterns(Path file, byte[] pattern) throws IOException {
-        return findPatterns(file, pattern, new SearchConfig().findAll(), null);
+        return findPatterns(file, pattern, new SearchConfig().findAll().parallel(), null);
     }
 
     public static List<PatternMatch> findPatterns(Path file, byte[] pattern, SearchConfig config,
                                                   ProgressListener listener) throws IOException
     {
+        return findPatterns(file, PatternMatcher.of(pattern), config, listener);
+    }
+
+    public static List<PatternMatch> findPatterns(Path file, PatternMatcher matcher, SearchConfig config,
+                                                  ProgressListener listener) throws IOException
+    {
+        if (config.hasSectionFilter())
+        {
+            List<PatternMatch> matches = new ArrayList<>();
+            List<long[]> ranges = resolveRanges(file, config);
+            long total = totalSize(ranges);
+            long done = 0;
+
+            for (long[] range : ranges)
+            {
+                matches.addAll(findPatterns(file, matcher, config.forRange(range[0], range[1]),
+                        offsetListener(listener, done, total)));
+
+                if (!config.findAll && !matches.isEmpty()) {
+                    return matches;
+                }
+                done += range[1] - range[0];
+            }
+
+            return matches;
+        }
+
         List<PatternMatch> matches = new ArrayList<>();
+        int patternLength = matcher.length();
         long fileSize = Files.size(file);
-        long searchEnd = Math.min(fileSize, config.startOffset + config.maxSearchSize);
+        long searchEnd = searchEnd(fileSize, config);
         long searchSize = searchEnd - config.startOffset;
 
-        if (searchSize <= 0 || pattern.length == 0) {
+        if (searchSize <= 0 || patternLength == 0) {
             return matches;
         }
 
+        if (config.parallelism > 1 && searchSize > config.bufferSize) {
+            return findPatternsParallel(file, matcher, config, searchEnd, listener);
+        }
+
         try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r"))
         {
-            int bufferSize = (int) Math.min(searchSize, config.bufferSize);
+            int bufferSize = (int) Math.min(searchSize, Math.max(config.bufferSize, patternLength));
             byte[] buffer = new byte[bufferSize];
 
             long currentPos = config.startOffset;
@@ -352,24 +444,24 @@ public class BinaryPatcher
                 int toRead = (int) Math.min(bufferSize, searchEnd - currentPos);
                 int bytesRead = raf.read(buffer, 0, toRead);
 
-                if (bytesRead <= 0) break;
+                if (bytesRead < patternLength) break;
 
-                for (int i = 0; i <= bytesRead - pattern.length; i++)
+                int i = matcher.indexOf(buffer, 0, bytesRead);
+                while (i != -1)
                 {
-                    if (matchesPattern(buffer, i, pattern))
-                    {
-                        long matchOffset = currentPos + i;
-                        byte[] context = readContext(raf, matchOffset, pattern.length,
-                                config.contextBefore, config.contextAfter);
+                    long matchOffset = currentPos + i;
+                    byte[] context = readContext(raf, matchOffset, patternLength,
+                            config.contextBefore, config.contextAfter);
 
-                        matches.add(new PatternMatch(matchOffset, context,
-                                config.contextBefore,
-                                config.contextBefore + pattern.length));
+                    matches.add(new PatternMatch(matchOffset, context,
+                            config.contextBefore,
+                            config.contextBefore + patternLength));
 
-                        if (!config.findAll) {
-                            return matches;
-                        }
+                    if (!config.findAll) {
+                        return matches;
                     }
+
+                    i = matcher.indexOf(buffer, i + 1, bytesRead);
                 }
 
                 if (listener != null) {
@@ -377,7 +469,9 @@ public class BinaryPatcher
                             "Searching...");
                 }
 
-                currentPos += bytesRead - pattern.length + 1;
+                if (currentPos + bytesRead >= searchEnd) break;
+
+                currentPos += bytesRead - patternLength + 1;
                 raf.seek(currentPos);
             }
         }
@@ -385,6 +479,222 @@ public class BinaryPatcher
         return matches;
     }
 
+    private static List<PatternMatch> findPatternsParallel(Path file, PatternMatcher matcher,
+                                                           SearchConfig config, long searchEnd,
+                                                           ProgressListener listener) throws IOException
+    {
+        int patternLength = matcher.length();
+        long searchSize = searchEnd - config.startOffset;
+        int chunkSize = Math.max(config.bufferSize, patternLength);
+
+        AtomicLong firstHit = new AtomicLong(Long.MAX_VALUE);
+        AtomicLong scanned = new AtomicLong();
+        Object progressLock = new Object();
+
+        List<Callable<List<PatternMatch>>> tasks = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            for (long chunkStart = config.startOffset; chunkStart < searchEnd; chunkStart += chunkSize)
+            {
+                final long start = chunkStart;
+                final int length = (int) Math.min(chunkSize, searchEnd - start);
+                final int readLength = (int) Math.min((long) length + patternLength - 1, searchEnd - start);
+
+                tasks.add(() ->
+                {
+                    List<PatternMatch> found = new ArrayList<>();
+
+                    // A hit earlier in the file already wins, nothing here can beat it
+                    if (config.findAll || start < firstHit.get())
+                    {
+                        byte[] buffer = new byte[readLength];
+                        readFully(channel, buffer, start);
+
+                        int i = matcher.indexOf(buffer, 0, readLength);
+                        while (i != -1 && i < length)
+                        {
+                            long matchOffset = start + i;
+                            found.add(new PatternMatch(matchOffset,
+                                    readContext(channel, matchOffset, patternLength,
+                                            config.contextBefore, config.contextAfter),
+                                    config.contextBefore,
+                                    config.contextBefore + patternLength));
+
+                            if (!config.findAll)
+                            {
+                                firstHit.accumulateAndGet(matchOffset, Math::min);
+                                break;
+                            }
+
+                            i = matcher.indexOf(buffer, i + 1, readLength);
+                        }
+                    }
+
+                    if (listener != null)
+                    {
+                        synchronized (progressLock) {
+                            listener.onProgress(scanned.addAndGet(length), searchSize, "Searching...");
+                        }
+                    }
+
+                    return found;
+                });
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(config.parallelism);
+            List<PatternMatch> matches = new ArrayList<>();
+
+            try
+            {
+                for (Future<List<PatternMatch>> future : pool.invokeAll(tasks)) {
+                    matches.addAll(future.get());
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Pattern search interrupted");
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof IOException io) throw io;
+                throw new IOException("Pattern search failed", e.getCause());
+            }
+            finally {
+                pool.shutdownNow();
+            }
+
+            matches.sort(Comparator.comparingLong(m -> m.offset));
+
+            if (!config.findAll && matches.size() > 1) {
+                return new ArrayList<>(matches.subList(0, 1));
+            }
+
+            return matches;
+        }
+    }
+
+    public static Map<String, List<PatternMatch>> findSignatures(Path file, SignatureScanner scanner,
+                                                                 SearchConfig config,
+                                                                 ProgressListener listener) throws IOException
+    {
+        if (config.hasSectionFilter()) {
+            return findSignatures(file, scanner, resolveRanges(file, config), config, listener);
+        }
+
+        Map<String, List<PatternMatch>> results = new LinkedHashMap<>();
+        for (SignatureScanner.Signature sig : scanner.getSignatures()) {
+            results.putIfAbsent(sig.id, new ArrayList<>());
+        }
+
+        int maxLength = scanner.maxLength();
+        long fileSize = Files.size(file);
+        long searchEnd = searchEnd(fileSize, config);
+        long searchSize = searchEnd - config.startOffset;
+
+        if (searchSize <= 0 || maxLength == 0) {
+            return results;
+        }
+
+        Set<String> pending = new HashSet<>(results.keySet());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r"))
+        {
+            int bufferSize = (int) Math.min(searchSize, Math.max(config.bufferSize, maxLength * 2));
+            byte[] buffer = new byte[bufferSize];
+
+            long currentPos = config.startOffset;
+            raf.seek(config.startOffset);
+
+            while (currentPos < searchEnd)
+            {
+                int toRead = (int) Math.min(bufferSize, searchEnd - currentPos);
+                raf.readFully(buffer, 0, toRead);
+                int bytesRead = toRead;
+
+                boolean lastChunk = currentPos + bytesRead >= searchEnd;
+                long chunkStart = currentPos;
+
+                // Chunks overlap by maxLength - 1, so hits starting in the overlap
+                // are left for the next chunk to avoid reporting them twice
+                long nextPos = lastChunk ? searchEnd : currentPos + bytesRead - maxLength + 1;
+
+                scanner.scan(buffer, 0, bytesRead, (sig, start) ->
+                {
+                    long matchOffset = chunkStart + start;
+                    if (matchOffset >= nextPos) return true;
+
+                    List<PatternMatch> hits = results.get(sig.id);
+                    if (!config.findAll && !hits.isEmpty()) return true;
+
+                    try {
+                        byte[] context = readContext(raf, matchOffset, sig.length(),
+                                config.contextBefore, config.contextAfter);
+                        hits.add(new PatternMatch(matchOffset, context,
+                                config.contextBefore,
+                                config.contextBefore + sig.length()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+
+                    pending.remove(sig.id);
+                    return config.findAll || !pending.isEmpty();
+                });
+
+                if (listener != null) {
+                    listener.onProgress(currentPos - config.startOffset + bytesRead, searchSize,
+                            "Searching...");
+                }
+
+                if (lastChunk || (!config.findAll && pending.isEmpty())) break;
+
+                currentPos = nextPos;
+                raf.seek(currentPos);
+            }
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return results;
+    }
+
+    // Scans only the given [start, end) file ranges, each read once
+    public static Map<String, List<PatternMatch>> findSignatures(Path file, SignatureScanner scanner,
+                                                                 List<long[]> ranges, SearchConfig config,
+                                                                 ProgressListener listener) throws IOException
+    {
+        Map<String, List<PatternMatch>> results = new LinkedHashMap<>();
+        for (SignatureScanner.Signature sig : scanner.getSignatures()) {
+            results.putIfAbsent(sig.id, new ArrayList<>());
+        }
+
+        long total = totalSize(ranges);
+        long done = 0;
+
+        for (long[] range : ranges)
+        {
+            Map<String, List<PatternMatch>> partial = findSignatures(file, scanner,
+                    config.forRange(range[0], range[1]), offsetListener(listener, done, total));
+
+            boolean complete = true;
+            for (Map.Entry<String, List<PatternMatch>> entry : partial.entrySet())
+            {
+                List<PatternMatch> hits = results.computeIfAbsent(entry.getKey(), k -> new ArrayList<>());
+                if (config.findAll || hits.isEmpty()) {
+                    hits.addAll(entry.getValue());
+                }
+                complete &= !hits.isEmpty();
+            }
+
+            if (!config.findAll && complete) break;
+            done += range[1] - range[0];
+        }
+
+        return results;
+    }
+
     public static PatternMatch findNestedPattern(Path file, byte[] outerPattern,
                                                  byte[] innerPattern, SearchConfig config,
                                                  ProgressListener listener) throws IOException
@@ -615,91 +925,92 @@ public class BinaryPatcher
     public static PatternMatch findMaskedPattern(Path file, MaskedPattern maskedPattern,
                                                  SearchConfig config) throws IOException
     {
-        long fileSize = Files.size(file);
-        long searchEnd = Math.min(fileSize, config.startOffset + config.maxSearchSize);
+        List<PatternMatch> results = findPatterns(file, PatternMatcher.of(maskedPattern), config, null);
+        return results.isEmpty() ? null : results.get(0);
+    }
 
-        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r"))
-        {
-            byte[] buffer = new byte[config.bufferSize];
-            long currentPos = config.startOffset;
-            raf.seek(config.startOffset);
+    private static int findPatternInArray(byte[] data, int start, int length, byte[] pattern)
+    {
+        return PatternMatcher.of(pattern).indexOf(data, start, start + length);
+    }
 
-            while (currentPos < searchEnd)
-            {
-                int bytesRead = raf.read(buffer);
-                if (bytesRead <= 0) break;
+    // File ranges a sectioned config covers, clipped to its startOffset/maxSearchSize window
+    static List<long[]> resolveRanges(Path file, SearchConfig config) throws IOException
+    {
+        long fileSize = Files.size(file);
+        long windowEnd = searchEnd(fileSize, config);
+        ExecutableLayout layout = ExecutableLayout.parse(file);
 
-                for (int i = 0; i <= bytesRead - maskedPattern.pattern.length; i++)
-                {
-                    if (matchesMaskedPattern(buffer, i, maskedPattern))
-                    {
-                        long matchOffset = currentPos + i;
-                        byte[] context = readContext(raf, matchOffset,
-                                maskedPattern.pattern.length,
-                                config.contextBefore, config.contextAfter);
+        List<long[]> sectionRanges = layout != null
+                ? layout.fileRanges(config.sectionNames, config.sectionKind)
+                : Collections.emptyList();
 
-                        return new PatternMatch(matchOffset, context,
-                                config.contextBefore,
-                                config.contextBefore + maskedPattern.pattern.length);
-                    }
-                }
+        if (sectionRanges.isEmpty())
+        {
+            System.err.println("No matching sections in " + file.getFileName() + ", searching whole window");
+            return List.of(new long[] {config.startOffset, windowEnd});
+        }
 
-                currentPos += bytesRead - maskedPattern.pattern.length + 1;
-                raf.seek(currentPos);
+        List<long[]> ranges = new ArrayList<>();
+        for (long[] range : sectionRanges)
+        {
+            long start = Math.max(range[0], config.startOffset);
+            long end = Math.min(range[1], windowEnd);
+
+            if (start < end) {
+                ranges.add(new long[] {start, end});
             }
         }
 
-        return null;
+        return ranges;
     }
 
-    private static boolean matchesPattern(byte[] data, int offset, byte[] pattern)
+    private static long totalSize(List<long[]> ranges)
     {
-        if (offset + pattern.length > data.length) {
-            return false;
-        }
-
-        for (int i = 0; i < pattern.length; i++)
-        {
-            if (data[offset + i] != pattern[i]) {
-                return false;
-            }
+        long total = 0;
+        for (long[] range : ranges) {
+            total += range[1] - range[0];
         }
+        return total;
+    }
 
-        return true;
+    private static ProgressListener offsetListener(ProgressListener listener, long done, long total)
+    {
+        if (listener == null) return null;
+        return (current, rangeTotal, message) -> listener.onProgress(done + current, total, message);
     }
 
-    private static boolean matchesMaskedPattern(byte[] data, int offset, MaskedPattern masked)
+    private static long searchEnd(long fileSize, SearchConfig config)
     {
-        if (offset + masked.pattern.length > data.length) {
-            return false;
+        if (config.maxSearchSize >= fileSize - config.startOffset) {
+            return fileSize;
         }
+        return config.startOffset + config.maxSearchSize;
+    }
 
-        for (int i = 0; i < masked.pattern.length; i++)
+    private static void readFully(FileChannel channel, byte[] buffer, long position) throws IOException
+    {
+        ByteBuffer bb = ByteBuffer.wrap(buffer);
+        while (bb.hasRemaining())
         {
-            if (masked.mask[i] && data[offset + i] != masked.pattern[i]) {
-                return false;
-            }
+            int n = channel.read(bb, position + bb.position());
+            if (n < 0) break;
         }
-
-        return true;
     }
 
-    private static int findPatternInArray(byte[] data, int start, int length, byte[] pattern)
+    private static byte[] readContext(FileChannel channel, long offset, int patternLength,
+                                      int before, int after) throws IOException
     {
-        int end = Math.min(start + length, data.length);
-
-        for (int i = start; i <= end - pattern.length; i++)
-        {
-            if (matchesPattern(data, i, pattern)) {
-                return i;
-            }
-        }
+        long startPos = Math.max(0, offset - before);
+        long endPos = offset + patternLength + after;
 
-        return -1;
+        byte[] context = new byte[(int) (endPos - startPos)];
+        readFully(channel, context, startPos);
+        return context;
     }
 
-    private static byte[] readContext(RandomAccessFile raf, long offset, int patternLength,
-                                      int before, int after) throws IOException
+    static byte[] readContext(RandomAccessFile raf, long offset, int patternLength,
+                              int before, int after) throws IOException
     {
         long startPos = Math.max(0, offset - before);
         long endPos = offset + patternLength + after;
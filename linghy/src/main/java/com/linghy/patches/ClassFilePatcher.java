@@ -0,0 +1,127 @@
+package com.linghy.patches;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+public class ClassFilePatcher
+{
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    public static boolean isClassFile(byte[] data) {
+        return data.length >= 10 && ByteBuffer.wrap(data).getInt(0) == MAGIC;
+    }
+
+    // Replaces search inside every CONSTANT_Utf8 entry and rewrites the
+    // entry's length, so the replacement may be any length. Everything
+    // after the constant pool refers to it by index and is copied as is
+    public static DomainPatcher.PatchResult replaceInUtf8Constants(byte[] classFile, String search,
+                                                                   String replacement) throws IOException
+    {
+        if (!isClassFile(classFile)) {
+            throw new IOException("Not a class file");
+        }
+
+        PatternMatcher matcher = PatternMatcher.of(modifiedUtf8(search));
+        ByteBuffer in = ByteBuffer.wrap(classFile);
+        in.position(8);
+
+        int poolCount = in.getShort() & 0xFFFF;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(classFile.length + 256);
+        DataOutputStream out = new DataOutputStream(buffer);
+        int copiedUpTo = 0;
+        int count = 0;
+
+        try
+        {
+            for (int index = 1; index < poolCount; index++)
+            {
+                int tag = in.get() & 0xFF;
+
+                switch (tag)
+                {
+                    case CONSTANT_UTF8 ->
+                    {
+                        int entryStart = in.position() - 1;
+                        int length = in.getShort() & 0xFFFF;
+                        int dataStart = in.position();
+                        in.position(dataStart + length);
+
+                        if (matcher.indexOf(classFile, dataStart, dataStart + length) == -1) {
+                            continue;
+                        }
+
+                        String value = new DataInputStream(
+                                new ByteArrayInputStream(classFile, dataStart - 2, length + 2)).readUTF();
+
+                        int occurrences = 0;
+                        for (int i = value.indexOf(search); i != -1; i = value.indexOf(search, i + search.length())) {
+                            occurrences++;
+                        }
+
+                        out.write(classFile, copiedUpTo, entryStart - copiedUpTo);
+                        out.writeByte(CONSTANT_UTF8);
+                        out.writeUTF(value.replace(search, replacement));
+
+                        copiedUpTo = dataStart + length;
+                        count += occurrences;
+                    }
+                    case CONSTANT_INTEGER, CONSTANT_FLOAT, CONSTANT_FIELDREF, CONSTANT_METHODREF,
+                         CONSTANT_INTERFACE_METHODREF, CONSTANT_NAME_AND_TYPE, CONSTANT_DYNAMIC,
+                         CONSTANT_INVOKE_DYNAMIC -> in.position(in.position() + 4);
+                    case CONSTANT_LONG, CONSTANT_DOUBLE ->
+                    {
+                        // 8-byte constants take up two pool slots
+                        in.position(in.position() + 8);
+                        index++;
+                    }
+                    case CONSTANT_CLASS, CONSTANT_STRING, CONSTANT_METHOD_TYPE, CONSTANT_MODULE,
+                         CONSTANT_PACKAGE -> in.position(in.position() + 2);
+                    case CONSTANT_METHOD_HANDLE -> in.position(in.position() + 3);
+                    default -> throw new IOException(String.format(
+                            "Unknown constant pool tag %d at index %d", tag, index));
+                }
+            }
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("Truncated constant pool", e);
+        }
+
+        if (count == 0) {
+            return new DomainPatcher.PatchResult(classFile, 0);
+        }
+
+        out.write(classFile, copiedUpTo, classFile.length - copiedUpTo);
+        return new DomainPatcher.PatchResult(buffer.toByteArray(), count);
+    }
+
+    private static byte[] modifiedUtf8(String value) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new DataOutputStream(buffer).writeUTF(value);
+
+        byte[] encoded = buffer.toByteArray();
+        byte[] result = new byte[encoded.length - 2];
+        System.arraycopy(encoded, 2, result, 0, result.length);
+        return result;
+    }
+}
@@ -1,21 +1,28 @@
 package com.linghy.patches;
 
 import com.linghy.patches.BinaryPatcher;
+import com.linghy.version.GameVersion;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.*;
 
 public class DomainPatcher
 {
     private static final String ORIGINAL_DOMAIN = "hytale.com";
     private static final int MIN_DOMAIN_LENGTH = 4;
-    private static final int MAX_DOMAIN_LENGTH = 10;
+    private static final int MAX_DOMAIN_LENGTH = 253;
+    // The client is patched in place, its strings cannot grow
+    private static final int MAX_CLIENT_DOMAIN_LENGTH = ORIGINAL_DOMAIN.length();
     private static final String DEFAULT_TARGET_DOMAIN = "sanasol.ws";
+    private static final String CLIENT_PATCH_ID = "domain";
 
     private final String targetDomain;
 
@@ -34,213 +41,55 @@ public class DomainPatcher
         }
     }
 
-    private byte[] stringToLengthPrefixed(String str)
-    {
-        int length = str.length();
-        byte[] result = new byte[4 + length + (length - 1)];
-
-        result[0] = (byte) length;
-
-        int pos = 4;
-        for (int i = 0; i < length; i++)
-        {
-            result[pos++] = (byte) str.charAt(i);
-            if (i < length - 1)
-            {
-                result[pos++] = 0x00;
-            }
-        }
-
-        return result;
-    }
-
-    private byte[] stringToUTF16LE(String str)
-    {
-        ByteBuffer buffer = ByteBuffer.allocate(str.length() * 2);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-
-        for (char c : str.toCharArray())
-        {
-            buffer.putChar(c);
-        }
-
-        return buffer.array();
-    }
-
     private byte[] stringToUTF8(String str)
     {
         return str.getBytes(StandardCharsets.UTF_8);
     }
 
-    public PatchResult findAndReplaceDomainUTF8(byte[] data, String oldDomain, String newDomain)
-    {
-        byte[] oldUtf8 = stringToUTF8(oldDomain);
-        byte[] newUtf8 = stringToUTF8(newDomain);
-
-        if (newUtf8.length > oldUtf8.length)
-        {
-            System.err.printf("  Skipping UTF-8 patch: new domain too long (%d > %d)%n",
-                    newUtf8.length, oldUtf8.length);
-            return new PatchResult(data, 0);
-        }
-
-        byte[] result = Arrays.copyOf(data, data.length);
-        List<Integer> positions = findAllOccurrences(result, oldUtf8);
-        int count = 0;
-
-        for (int pos : positions)
-        {
-            if (pos + oldUtf8.length <= result.length)
-            {
-                System.arraycopy(newUtf8, 0, result, pos, newUtf8.length);
-
-                for (int i = newUtf8.length; i < oldUtf8.length; i++)
-                {
-                    result[pos + i] = 0x00;
-                }
-
-                count++;
-                System.out.printf("  Patched UTF-8 occurrence at offset 0x%x%n", pos);
-            }
-        }
-
-        return new PatchResult(result, count);
+    public PatchResult applyDomainPatches(byte[] data, String protocol) {
+        return applyDomainPatches(data, protocol, null);
     }
 
-    public PatchResult findAndReplaceDomainSmart(byte[] data, String oldDomain, String newDomain)
+    // ranges limits the search to [start, end) file ranges, null means the whole array
+    public PatchResult applyDomainPatches(byte[] data, String protocol, List<long[]> ranges)
     {
-        if (newDomain.length() > oldDomain.length())
-        {
-            System.err.printf("  Skipping UTF-16LE patch: new domain too long (%d > %d)%n",
-                    newDomain.length(), oldDomain.length());
-            return new PatchResult(data, 0);
-        }
-
-        byte[] result = Arrays.copyOf(data, data.length);
-
-        String oldPrefix = oldDomain.substring(0, oldDomain.length() - 1);
-        String newPrefix = newDomain.substring(0, newDomain.length() - 1);
-
-        byte[] oldUtf16NoLast = stringToUTF16LE(oldPrefix);
-        byte[] newUtf16NoLast = stringToUTF16LE(newPrefix);
-
-        byte oldLastCharByte = (byte) oldDomain.charAt(oldDomain.length() - 1);
-        byte newLastCharByte = (byte) newDomain.charAt(newDomain.length() - 1);
-
-        List<Integer> positions = findAllOccurrences(result, oldUtf16NoLast);
-        int count = 0;
-
-        for (int pos : positions)
-        {
-            int lastCharPos = pos + oldUtf16NoLast.length;
-            if (lastCharPos + 1 > result.length)
-            {
-                continue;
-            }
-
-            if (result[lastCharPos] != oldLastCharByte)
-            {
-                continue;
-            }
-
-            System.arraycopy(newUtf16NoLast, 0, result, pos, newUtf16NoLast.length);
-            result[lastCharPos] = newLastCharByte;
-
-            if (newDomain.length() < oldDomain.length())
-            {
-                byte[] newFull = stringToUTF16LE(newDomain);
-                byte[] oldFull = stringToUTF16LE(oldDomain);
-
-                int paddingStart = pos + newFull.length;
-                int paddingEnd = pos + oldFull.length;
-
-                for (int i = paddingStart; i < paddingEnd && i < result.length; i++)
-                {
-                    result[i] = 0x00;
-                }
-            }
+        String domain = clientDomain();
+        System.out.printf("  Replacing %s -> %s%n", ORIGINAL_DOMAIN, domain);
 
-            boolean isNullTerminated = (lastCharPos + 1 < result.length) &&
-                    (result[lastCharPos + 1] == 0x00);
+        ScanPlan plan = ScanPlan.compile(PatchDefinitions.getInstance()
+                .select(PatchDefinitions.TARGET_CLIENT, CLIENT_PATCH_ID, null, true), variables(protocol, domain));
 
-            if (isNullTerminated)
-            {
-                System.out.printf("  Patched UTF-16LE occurrence at offset 0x%x%n", pos);
-            }
-            else
-            {
-                System.out.printf("  Patched length-prefixed occurrence at offset 0x%x%n", pos);
-            }
-
-            count++;
-        }
+        List<ScanPlan.Hit> hits = plan.scan(data, ranges);
+        ScanPlan.logHits(hits);
+        return new PatchResult(plan.apply(data, hits), hits.size());
+    }
 
-        return new PatchResult(result, count);
+    private Map<String, String> variables(String protocol, String domain) {
+        return Map.of("protocol", protocol, "domain", domain);
     }
 
-    public PatchResult applyDomainPatches(byte[] data, String protocol)
+    // The client strings cannot grow, a longer domain is only usable on the server
+    private String clientDomain()
     {
-        byte[] result = Arrays.copyOf(data, data.length);
-        int totalCount = 0;
-
-        System.out.printf("  Replacing %s -> %s%n", ORIGINAL_DOMAIN, targetDomain);
-
-        String oldSentry = "https://ca900df42fcf57d4dd8401a86ddd7da2@sentry.hytale.com/2";
-        String newSentry = String.format("%st@%s/2", protocol, targetDomain);
-
-        PatchResult sentryResult = replaceBytes(result,
-                stringToLengthPrefixed(oldSentry),
-                stringToLengthPrefixed(newSentry));
-        result = sentryResult.data;
-        if (sentryResult.count > 0)
-        {
-            System.out.printf("  Patched sentry URL: %d occurrences%n", sentryResult.count);
-            totalCount += sentryResult.count;
+        if (targetDomain.length() <= MAX_CLIENT_DOMAIN_LENGTH) {
+            return targetDomain;
         }
 
-        String[] subdomains = {"", "sessions.", "account-data.", "gameservers."};
-        for (String sub : subdomains)
-        {
-            String oldUrl = protocol + sub + ORIGINAL_DOMAIN;
-            String newUrl = protocol + targetDomain;
-
-            PatchResult urlResult = replaceBytes(result,
-                    stringToLengthPrefixed(oldUrl),
-                    stringToLengthPrefixed(newUrl));
-            result = urlResult.data;
-            if (urlResult.count > 0)
-            {
-                System.out.printf("  Patched URL %s: %d occurrences%n", oldUrl, urlResult.count);
-                totalCount += urlResult.count;
-            }
-        }
-
-        PatchResult domainResult = replaceBytes(result,
-                stringToLengthPrefixed(ORIGINAL_DOMAIN),
-                stringToLengthPrefixed(targetDomain));
-        result = domainResult.data;
-        if (domainResult.count > 0)
-        {
-            System.out.printf("  Patched bare domain: %d occurrences%n", domainResult.count);
-            totalCount += domainResult.count;
-        }
-
-        PatchResult utf16Result = findAndReplaceDomainSmart(result, ORIGINAL_DOMAIN, targetDomain);
-        result = utf16Result.data;
-        if (utf16Result.count > 0)
-        {
-            System.out.printf("  Patched UTF-16LE: %d occurrences%n", utf16Result.count);
-            totalCount += utf16Result.count;
-        }
+        System.err.printf("Warning: Domain '%s' is too long for the client (max %d chars), using default: %s%n",
+                targetDomain, MAX_CLIENT_DOMAIN_LENGTH, DEFAULT_TARGET_DOMAIN);
+        return DEFAULT_TARGET_DOMAIN;
+    }
 
-        return new PatchResult(result, totalCount);
+    public void patchClient(Path clientPath, PatchProgressListener listener) throws IOException {
+        patchClient(clientPath, null, listener);
     }
 
-    public void patchClient(Path clientPath, PatchProgressListener listener) throws IOException
+    public void patchClient(Path clientPath, GameVersion version, PatchProgressListener listener) throws IOException
     {
         System.out.println("=== Client Patcher ===");
         System.out.printf("Target: %s%n", clientPath);
-        System.out.printf("Domain: %s (%d chars)%n", targetDomain, targetDomain.length());
+        String domain = clientDomain();
+        System.out.printf("Domain: %s (%d chars)%n", domain, domain.length());
 
         if (!Files.exists(clientPath))
         {
@@ -249,48 +98,45 @@ public class DomainPatcher
 
         if (listener != null)
         {
-            listener.onProgress(10, "Reading client binary...");
+            listener.onProgress(10, "Scanning client binary...");
         }
 
-        byte[] data = Files.readAllBytes(clientPath);
+        // Every enabled client definition for this OS and version is compiled
+        // into one plan, so domain strings (data sections) and code patches
+        // share a single read of the binary. Only matched ranges are written
+        ScanPlan plan = ScanPlan.compile(
+                PatchDefinitions.getInstance().select(PatchDefinitions.TARGET_CLIENT, version),
+                variables("https://", domain));
 
-        if (listener != null)
-        {
-            listener.onProgress(30, "Applying patches...");
-        }
+        BinaryPatcher.ProgressListener progress = listener == null ? null :
+                (current, total, message) -> listener.onProgress(10 + 60.0 * current / Math.max(total, 1),
+                        "Scanning client binary...");
+
+        List<ScanPlan.Hit> hits = plan.scan(clientPath, progress);
 
-        PatchResult result = applyDomainPatches(data, "https://");
+        System.out.printf("  Replacing %s -> %s%n", ORIGINAL_DOMAIN, domain);
 
-        if (result.count == 0)
+        if (hits.isEmpty())
         {
             System.out.println("No patches applied (already patched or no matches found)");
             return;
         }
 
-        if (listener != null)
-        {
-            listener.onProgress(70, "Writing patched binary...");
-        }
+        ScanPlan.logHits(hits);
 
-        Path backupPath = clientPath.resolveSibling(clientPath.getFileName() + ".original");
-        if (!Files.exists(backupPath))
+        if (listener != null)
         {
-            Files.copy(clientPath, backupPath, StandardCopyOption.REPLACE_EXISTING);
+            listener.onProgress(70, "Writing patched ranges...");
         }
 
-        Files.write(clientPath, result.data, StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING);
-
-        if (!System.getProperty("os.name").toLowerCase().contains("win")) {
-            clientPath.toFile().setExecutable(true, false);
-        }
+        plan.apply(clientPath, hits);
 
         if (listener != null)
         {
-            listener.onProgress(100, String.format("Client patched (%d occurrences)", result.count));
+            listener.onProgress(100, String.format("Client patched (%d occurrences)", hits.size()));
         }
 
-        System.out.printf("Client patched successfully (%d total occurrences)%n", result.count);
+        System.out.printf("Client patched successfully (%d total occurrences)%n", hits.size());
     }
 
     public void patchServer(Path serverPath, PatchProgressListener listener) throws IOException
@@ -311,59 +157,53 @@ public class DomainPatcher
 
         Path tempPath = serverPath.resolveSibling(serverPath.getFileName() + ".tmp");
 
-        try (ZipFile zipReader = new ZipFile(serverPath.toFile());
-             ZipOutputStream zipWriter = new ZipOutputStream(
-                     Files.newOutputStream(tempPath, StandardOpenOption.CREATE,
-                             StandardOpenOption.TRUNCATE_EXISTING)))
+        try (ZipFile zipReader = new ZipFile(serverPath))
         {
-            int totalCount = 0;
-            byte[] oldUtf8 = stringToUTF8(ORIGINAL_DOMAIN);
-
-            Enumeration<? extends ZipEntry> entries = zipReader.entries();
-            List<? extends ZipEntry> entryList = Collections.list(entries);
+            List<ZipArchiveEntry> entryList = Collections.list(zipReader.getEntriesInPhysicalOrder());
 
             if (listener != null)
             {
                 listener.onProgress(30, "Patching JAR entries...");
             }
 
-            int entryIndex = 0;
-            for (ZipEntry entry : entryList)
-            {
-                if (listener != null && entryIndex % 100 == 0)
-                {
-                    int pct = 30 + (40 * entryIndex / entryList.size());
-                    listener.onProgress(pct, "Patching JAR entries...");
-                }
-                entryIndex++;
+            Map<ZipArchiveEntry, PatchedEntry> patched = patchServerEntries(zipReader, entryList, listener);
 
-                byte[] data;
-                try (InputStream is = zipReader.getInputStream(entry))
-                {
-                    data = is.readAllBytes();
-                }
+            int totalCount = 0;
+            for (PatchedEntry entry : patched.values()) {
+                totalCount += entry.count;
+            }
 
-                boolean shouldPatch = entry.getName().endsWith(".class") ||
-                        entry.getName().endsWith(".properties") ||
-                        entry.getName().endsWith(".json") ||
-                        entry.getName().endsWith(".xml") ||
-                        entry.getName().endsWith(".yml");
+            if (totalCount == 0)
+            {
+                System.out.println("No patches applied (already patched or no matches found)");
+                return;
+            }
+
+            if (listener != null)
+            {
+                listener.onProgress(70, "Writing patched JAR...");
+            }
 
-                if (shouldPatch && contains(data, oldUtf8))
+            // Untouched entries are copied still compressed, only the
+            // patched ones were inflated and deflated again
+            try (ZipArchiveOutputStream zipWriter = new ZipArchiveOutputStream(tempPath))
+            {
+                for (ZipArchiveEntry entry : entryList)
                 {
-                    PatchResult patchResult = findAndReplaceDomainUTF8(data, ORIGINAL_DOMAIN, targetDomain);
-                    if (patchResult.count > 0)
+                    PatchedEntry replacement = patched.get(entry);
+
+                    if (replacement != null)
                     {
-                        data = patchResult.data;
-                        totalCount += patchResult.count;
+                        zipWriter.addRawArchiveEntry(replacement.entry,
+                                new ByteArrayInputStream(replacement.rawData));
+                    }
+                    else
+                    {
+                        try (InputStream raw = zipReader.getRawInputStream(entry)) {
+                            zipWriter.addRawArchiveEntry(entry, raw);
+                        }
                     }
                 }
-
-                ZipEntry newEntry = new ZipEntry(entry.getName());
-                newEntry.setTime(entry.getTime());
-                zipWriter.putNextEntry(newEntry);
-                zipWriter.write(data);
-                zipWriter.closeEntry();
             }
 
             if (listener != null)
@@ -371,108 +211,297 @@ public class DomainPatcher
                 listener.onProgress(80, "Finalizing patched JAR...");
             }
 
-            zipWriter.close();
+            Path backupPath = serverPath.resolveSibling(serverPath.getFileName() + ".original");
+            if (!Files.exists(backupPath))
+            {
+                Files.move(serverPath, backupPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            else
+            {
+                Files.delete(serverPath);
+            }
+
+            Files.move(tempPath, serverPath, StandardCopyOption.REPLACE_EXISTING);
 
-            if (totalCount > 0)
+            if (listener != null)
             {
-                Path backupPath = serverPath.resolveSibling(serverPath.getFileName() + ".original");
-                if (!Files.exists(backupPath))
-                {
-                    Files.move(serverPath, backupPath, StandardCopyOption.REPLACE_EXISTING);
+                listener.onProgress(100, String.format("Server patched (%d occurrences)", totalCount));
+            }
+
+            System.out.printf("Server patched successfully (%d total occurrences, %d entries rewritten)%n",
+                    totalCount, patched.size());
+        }
+        catch (IOException e)
+        {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+    }
+
+    // Inflates and patches candidate entries in parallel, returning only the
+    // ones that changed, already recompressed
+    private Map<ZipArchiveEntry, PatchedEntry> patchServerEntries(ZipFile zipReader, List<ZipArchiveEntry> entries,
+                                                                  PatchProgressListener listener) throws IOException
+    {
+        byte[] oldUtf8 = stringToUTF8(ORIGINAL_DOMAIN);
+
+        List<ZipArchiveEntry> candidates = new ArrayList<>();
+        for (ZipArchiveEntry entry : entries)
+        {
+            if (!entry.isDirectory() && isPatchableEntry(entry.getName()) && zipReader.canReadEntryData(entry)) {
+                candidates.add(entry);
+            }
+        }
+
+        AtomicInteger done = new AtomicInteger();
+        Object progressLock = new Object();
+        List<Callable<PatchedEntry>> tasks = new ArrayList<>();
+
+        for (ZipArchiveEntry entry : candidates)
+        {
+            tasks.add(() ->
+            {
+                byte[] data;
+                try (InputStream is = zipReader.getInputStream(entry)) {
+                    data = is.readAllBytes();
                 }
-                else
+
+                PatchedEntry result = null;
+                if (contains(data, oldUtf8))
                 {
-                    Files.delete(serverPath);
+                    PatchResult patchResult = patchServerEntry(entry.getName(), data, oldUtf8);
+                    if (patchResult.count > 0) {
+                        result = PatchedEntry.of(entry, patchResult.data, patchResult.count);
+                    }
                 }
 
-                Files.move(tempPath, serverPath, StandardCopyOption.REPLACE_EXISTING);
-
-                if (listener != null)
+                int completed = done.incrementAndGet();
+                if (listener != null && completed % 100 == 0)
                 {
-                    listener.onProgress(100, String.format("Server patched (%d occurrences)", totalCount));
+                    synchronized (progressLock) {
+                        listener.onProgress(30 + (40.0 * completed / candidates.size()), "Patching JAR entries...");
+                    }
                 }
 
-                System.out.printf("Server patched successfully (%d total occurrences)%n", totalCount);
-            }
-            else
+                return result;
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        Map<ZipArchiveEntry, PatchedEntry> patched = new IdentityHashMap<>();
+
+        try
+        {
+            for (Future<PatchedEntry> future : pool.invokeAll(tasks))
             {
-                Files.deleteIfExists(tempPath);
-                System.out.println("No patches applied (already patched or no matches found)");
+                PatchedEntry entry = future.get();
+                if (entry != null) {
+                    patched.put(entry.source, entry);
+                }
             }
         }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Server patching interrupted");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Server patching failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        return patched;
     }
 
-    private List<Integer> findAllOccurrences(byte[] data, byte[] pattern)
+    // Classes get their constant pool rewritten and resources are plain
+    // text, so neither needs the new domain to fit the old one
+    private PatchResult patchServerEntry(String name, byte[] data, byte[] oldUtf8)
     {
-        List<Integer> positions = new ArrayList<>();
-
-        for (int i = 0; i <= data.length - pattern.length; i++)
+        if (name.endsWith(".class"))
         {
-            boolean found = true;
-            for (int j = 0; j < pattern.length; j++)
+            try
             {
-                if (data[i + j] != pattern[j])
-                {
-                    found = false;
-                    break;
+                PatchResult result = ClassFilePatcher.replaceInUtf8Constants(data, ORIGINAL_DOMAIN, targetDomain);
+                if (result.count > 0) {
+                    System.out.printf("  Patched %d constant(s) in %s%n", result.count, name);
                 }
+                return result;
             }
-
-            if (found)
+            catch (IOException e)
             {
-                positions.add(i);
+                System.err.printf("  Skipping %s: %s%n", name, e.getMessage());
+                return new PatchResult(data, 0);
             }
         }
 
-        return positions;
-    }
+        byte[] newUtf8 = stringToUTF8(targetDomain);
+        List<Integer> positions = findAllOccurrences(data, oldUtf8);
 
-    private PatchResult replaceBytes(byte[] data, byte[] oldBytes, byte[] newBytes)
-    {
-        if (newBytes.length > oldBytes.length)
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + positions.size() * newUtf8.length);
+        int copiedUpTo = 0;
+        int count = 0;
+
+        for (int pos : positions)
         {
-            System.err.printf("  Warning: New pattern (%d) longer than old (%d), skipping%n",
-                    newBytes.length, oldBytes.length);
-            return new PatchResult(data, 0);
+            if (pos < copiedUpTo) continue;
+
+            out.write(data, copiedUpTo, pos - copiedUpTo);
+            out.write(newUtf8, 0, newUtf8.length);
+            copiedUpTo = pos + oldUtf8.length;
+            count++;
         }
 
-        byte[] result = Arrays.copyOf(data, data.length);
-        List<Integer> positions = findAllOccurrences(result, oldBytes);
+        out.write(data, copiedUpTo, data.length - copiedUpTo);
 
-        for (int pos : positions)
+        if (count > 0) {
+            System.out.printf("  Patched %d occurrence(s) in %s%n", count, name);
+        }
+        return new PatchResult(out.toByteArray(), count);
+    }
+
+    private static boolean isPatchableEntry(String name)
+    {
+        return name.endsWith(".class") ||
+                name.endsWith(".properties") ||
+                name.endsWith(".json") ||
+                name.endsWith(".xml") ||
+                name.endsWith(".yml");
+    }
+
+    public static boolean isClientPatched(Path clientPath)
+    {
+        Path legacyBackup = clientPath.resolveSibling(clientPath.getFileName() + ".original");
+        return PatchSet.isApplied(clientPath, CLIENT_PATCH_ID) || Files.exists(legacyBackup);
+    }
+
+    // Whether backup is the unpatched build of client: the same size, with the
+    // domain strings the client patch replaces still in it and gone from client
+    public static boolean isUnpatchedClient(Path backup, Path client) throws IOException
+    {
+        if (Files.size(backup) != Files.size(client)) return false;
+
+        ScanPlan plan = ScanPlan.compile(PatchDefinitions.getInstance()
+                        .select(PatchDefinitions.TARGET_CLIENT, CLIENT_PATCH_ID, null, true),
+                Map.of("protocol", "https://", "domain", ORIGINAL_DOMAIN));
+
+        return !plan.scan(backup, null).isEmpty() && plan.scan(client, null).isEmpty();
+    }
+
+    // Whether backup is the unpatched jar of server: the same entries, and
+    // every entry that differs names the original domain only in the backup
+    public static boolean isUnpatchedServer(Path backup, Path server) throws IOException
+    {
+        byte[] domain = ORIGINAL_DOMAIN.getBytes(StandardCharsets.UTF_8);
+        PatternMatcher matcher = PatternMatcher.of(domain);
+
+        try (ZipFile original = new ZipFile(backup); ZipFile patched = new ZipFile(server))
         {
-            System.arraycopy(newBytes, 0, result, pos, newBytes.length);
+            Map<String, ZipArchiveEntry> entries = new HashMap<>();
+            for (ZipArchiveEntry entry : Collections.list(patched.getEntries())) {
+                entries.put(entry.getName(), entry);
+            }
 
-            for (int i = newBytes.length; i < oldBytes.length; i++)
+            List<ZipArchiveEntry> originalEntries = Collections.list(original.getEntries());
+            if (originalEntries.size() != entries.size()) return false;
+
+            boolean differs = false;
+            for (ZipArchiveEntry entry : originalEntries)
             {
-                result[pos + i] = 0x00;
+                ZipArchiveEntry other = entries.get(entry.getName());
+                if (other == null) return false;
+                if (entry.getCrc() == other.getCrc() && entry.getSize() == other.getSize()) continue;
+
+                if (!isPatchableEntry(entry.getName())) return false;
+
+                byte[] before;
+                byte[] after;
+                try (InputStream is = original.getInputStream(entry)) {
+                    before = is.readAllBytes();
+                }
+                try (InputStream is = patched.getInputStream(other)) {
+                    after = is.readAllBytes();
+                }
+
+                if (matcher.indexOf(before, 0, before.length) == -1
+                        || matcher.indexOf(after, 0, after.length) != -1) {
+                    return false;
+                }
+                differs = true;
             }
+
+            return differs;
         }
+    }
 
-        return new PatchResult(result, positions.size());
+    private List<Integer> findAllOccurrences(byte[] data, byte[] pattern)
+    {
+        List<Integer> positions = new ArrayList<>();
+        PatternMatcher matcher = PatternMatcher.of(pattern);
+
+        int pos = matcher.indexOf(data, 0, data.length);
+        while (pos != -1)
+        {
+            positions.add(pos);
+            pos = matcher.indexOf(data, pos + 1, data.length);
+        }
+
+        return positions;
     }
 
     private boolean contains(byte[] data, byte[] pattern)
     {
-        for (int i = 0; i <= data.length - pattern.length; i++)
+        return PatternMatcher.of(pattern).indexOf(data, 0, data.length) != -1;
+    }
+
+    private static class PatchedEntry
+    {
+        final ZipArchiveEntry source;
+        final ZipArchiveEntry entry;
+        final byte[] rawData;
+        final int count;
+
+        PatchedEntry(ZipArchiveEntry source, ZipArchiveEntry entry, byte[] rawData, int count)
+        {
+            this.source = source;
+            this.entry = entry;
+            this.rawData = rawData;
+            this.count = count;
+        }
+
+        // Keeps the source entry's metadata and compression method
+        static PatchedEntry of(ZipArchiveEntry source, byte[] data, int count) throws IOException
         {
-            boolean found = true;
-            for (int j = 0; j < pattern.length; j++)
+            CRC32 crc = new CRC32();
+            crc.update(data);
+
+            ZipArchiveEntry entry = new ZipArchiveEntry(source);
+            entry.setSize(data.length);
+            entry.setCrc(crc.getValue());
+
+            byte[] rawData = data;
+            if (source.getMethod() != ZipArchiveEntry.STORED)
             {
-                if (data[i + j] != pattern[j])
-                {
-                    found = false;
-                    break;
+                entry.setMethod(ZipArchiveEntry.DEFLATED);
+
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+
+                try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+                    deflate.write(data);
+                } finally {
+                    deflater.end();
                 }
-            }
 
-            if (found)
-            {
-                return true;
+                rawData = out.toByteArray();
             }
-        }
 
-        return false;
+            entry.setCompressedSize(rawData.length);
+            return new PatchedEntry(source, entry, rawData, count);
+        }
     }
 
     public static class PatchResult
@@ -499,7 +528,12 @@ public class DomainPatcher
         if (clientPath != null)
         {
             Path backupPath = clientPath.resolveSibling(clientPath.getFileName() + ".original");
-            if (Files.exists(backupPath))
+            if (PatchSet.restore(clientPath))
+            {
+                System.out.println("Restored original client binary from undo log");
+                restored++;
+            }
+            else if (Files.exists(backupPath))
             {
                 Files.delete(clientPath);
                 Files.move(backupPath, clientPath, StandardCopyOption.REPLACE_EXISTING);
@@ -0,0 +1,346 @@
+package com.linghy.patches;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+public class ExecutableLayout
+{
+    public enum Format { ELF, PE }
+
+    public enum SectionKind
+    {
+        CODE,
+        DATA;
+
+        boolean matches(Section section) {
+            return this == CODE ? section.executable : !section.executable;
+        }
+    }
+
+    private static final int SHT_NOBITS = 8;
+    private static final long SHF_WRITE = 0x1;
+    private static final long SHF_ALLOC = 0x2;
+    private static final long SHF_EXECINSTR = 0x4;
+    private static final int PT_LOAD = 1;
+    private static final int PF_X = 0x1;
+    private static final int PF_W = 0x2;
+
+    private static final int IMAGE_SCN_MEM_EXECUTE = 0x20000000;
+    private static final int IMAGE_SCN_MEM_WRITE = 0x80000000;
+    private static final int IMAGE_SCN_CNT_UNINITIALIZED_DATA = 0x80;
+
+    private final Format format;
+    private final long imageBase;
+    private final List<Section> sections;
+
+    public static class Section
+    {
+        public final String name;
+        public final long fileOffset;
+        public final long fileSize;
+        public final long virtualAddress;
+        public final long virtualSize;
+        public final boolean executable;
+        public final boolean writable;
+
+        public Section(String name, long fileOffset, long fileSize, long virtualAddress,
+                       long virtualSize, boolean executable, boolean writable)
+        {
+            this.name = name;
+            this.fileOffset = fileOffset;
+            this.fileSize = fileSize;
+            this.virtualAddress = virtualAddress;
+            this.virtualSize = virtualSize;
+            this.executable = executable;
+            this.writable = writable;
+        }
+
+        public long fileEnd() {
+            return fileOffset + fileSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s [0x%X-0x%X) va=0x%X%s%s", name, fileOffset, fileEnd(),
+                    virtualAddress, executable ? " x" : "", writable ? " w" : "");
+        }
+    }
+
+    private ExecutableLayout(Format format, long imageBase, List<Section> sections)
+    {
+        this.format = format;
+        this.imageBase = imageBase;
+        this.sections = Collections.unmodifiableList(sections);
+    }
+
+    // Returns null for anything that is not a well-formed ELF or PE image
+    public static ExecutableLayout parse(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() < 64) return null;
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), Integer.MAX_VALUE)));
+        }
+    }
+
+    public static ExecutableLayout parse(byte[] data) {
+        return parse(ByteBuffer.wrap(data));
+    }
+
+    public static ExecutableLayout parse(ByteBuffer image)
+    {
+        ByteBuffer buf = image.duplicate();
+
+        try
+        {
+            if (buf.limit() >= 4 && buf.get(0) == 0x7F && buf.get(1) == 'E'
+                    && buf.get(2) == 'L' && buf.get(3) == 'F') {
+                return parseElf(buf);
+            }
+
+            if (buf.limit() >= 0x40 && buf.get(0) == 'M' && buf.get(1) == 'Z') {
+                return parsePe(buf);
+            }
+        }
+        catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Malformed executable headers: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    private static ExecutableLayout parseElf(ByteBuffer buf)
+    {
+        boolean is64 = buf.get(4) == 2;
+        buf.order(buf.get(5) == 2 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+
+        long shoff = is64 ? buf.getLong(0x28) : u32(buf, 0x20);
+        int shentsize = u16(buf, is64 ? 0x3A : 0x2E);
+        int shnum = u16(buf, is64 ? 0x3C : 0x30);
+        int shstrndx = u16(buf, is64 ? 0x3E : 0x32);
+
+        List<Section> sections = new ArrayList<>();
+
+        if (shoff > 0 && shnum > 0 && shstrndx < shnum)
+        {
+            long strtabOffset = elfSectionField(buf, is64, shoff + (long) shstrndx * shentsize, 2);
+
+            for (int i = 0; i < shnum; i++)
+            {
+                long header = shoff + (long) i * shentsize;
+                int type = buf.getInt((int) header + 4);
+                long flags = elfSectionField(buf, is64, header, 0);
+
+                if ((flags & SHF_ALLOC) == 0 || type == SHT_NOBITS) continue;
+
+                String name = cString(buf, strtabOffset + u32(buf, (int) header));
+                long addr = elfSectionField(buf, is64, header, 1);
+                long offset = elfSectionField(buf, is64, header, 2);
+                long size = elfSectionField(buf, is64, header, 3);
+
+                sections.add(new Section(name, offset, size, addr, size,
+                        (flags & SHF_EXECINSTR) != 0, (flags & SHF_WRITE) != 0));
+            }
+        }
+        else
+        {
+            // Stripped section table, fall back to loadable segments
+            long phoff = is64 ? buf.getLong(0x20) : u32(buf, 0x1C);
+            int phentsize = u16(buf, is64 ? 0x36 : 0x2A);
+            int phnum = u16(buf, is64 ? 0x38 : 0x2C);
+
+            for (int i = 0; i < phnum; i++)
+            {
+                int header = (int) (phoff + (long) i * phentsize);
+                if (buf.getInt(header) != PT_LOAD) continue;
+
+                int flags = is64 ? buf.getInt(header + 4) : buf.getInt(header + 0x18);
+                long offset = is64 ? buf.getLong(header + 8) : u32(buf, header + 4);
+                long vaddr = is64 ? buf.getLong(header + 0x10) : u32(buf, header + 8);
+                long filesz = is64 ? buf.getLong(header + 0x20) : u32(buf, header + 0x10);
+                long memsz = is64 ? buf.getLong(header + 0x28) : u32(buf, header + 0x14);
+
+                sections.add(new Section("LOAD" + i, offset, filesz, vaddr, memsz,
+                        (flags & PF_X) != 0, (flags & PF_W) != 0));
+            }
+        }
+
+        return new ExecutableLayout(Format.ELF, 0, sections);
+    }
+
+    // field: 0 = sh_flags, 1 = sh_addr, 2 = sh_offset, 3 = sh_size
+    private static long elfSectionField(ByteBuffer buf, boolean is64, long header, int field)
+    {
+        int pos = (int) header + 8 + field * (is64 ? 8 : 4);
+        return is64 ? buf.getLong(pos) : u32(buf, pos);
+    }
+
+    private static ExecutableLayout parsePe(ByteBuffer buf)
+    {
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        int peOffset = buf.getInt(0x3C);
+        if (buf.getInt(peOffset) != 0x00004550) { // "PE\0\0"
+            return null;
+        }
+
+        int coff = peOffset + 4;
+        int numberOfSections = u16(buf, coff + 2);
+        int sizeOfOptionalHeader = u16(buf, coff + 16);
+        int optional = coff + 20;
+
+        int magic = u16(buf, optional);
+        long imageBase = magic == 0x20B ? buf.getLong(optional + 24) : u32(buf, optional + 28);
+
+        List<Section> sections = new ArrayList<>();
+        int table = optional + sizeOfOptionalHeader;
+
+        for (int i = 0; i < numberOfSections; i++)
+        {
+            int header = table + i * 40;
+
+            byte[] rawName = new byte[8];
+            buf.get(header, rawName);
+            String name = cString(rawName);
+
+            long virtualSize = u32(buf, header + 8);
+            long virtualAddress = u32(buf, header + 12);
+            long rawSize = u32(buf, header + 16);
+            long rawPointer = u32(buf, header + 20);
+            int characteristics = buf.getInt(header + 36);
+
+            if ((characteristics & IMAGE_SCN_CNT_UNINITIALIZED_DATA) != 0 || rawSize == 0) continue;
+
+            sections.add(new Section(name, rawPointer, rawSize, imageBase + virtualAddress, virtualSize,
+                    (characteristics & IMAGE_SCN_MEM_EXECUTE) != 0,
+                    (characteristics & IMAGE_SCN_MEM_WRITE) != 0));
+        }
+
+        return new ExecutableLayout(Format.PE, imageBase, sections);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public long getImageBase() {
+        return imageBase;
+    }
+
+    public List<Section> getSections() {
+        return sections;
+    }
+
+    public Section findSection(String name)
+    {
+        for (Section section : sections)
+        {
+            if (section.name.equals(name)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    public List<Section> getSections(SectionKind kind)
+    {
+        List<Section> result = new ArrayList<>();
+        for (Section section : sections)
+        {
+            if (kind.matches(section)) {
+                result.add(section);
+            }
+        }
+        return result;
+    }
+
+    public long virtualToFileOffset(long virtualAddress)
+    {
+        for (Section section : sections)
+        {
+            long delta = virtualAddress - section.virtualAddress;
+            if (delta >= 0 && delta < section.fileSize && delta < Math.max(section.virtualSize, section.fileSize)) {
+                return section.fileOffset + delta;
+            }
+        }
+        return -1;
+    }
+
+    public long fileOffsetToVirtual(long fileOffset)
+    {
+        for (Section section : sections)
+        {
+            if (fileOffset >= section.fileOffset && fileOffset < section.fileEnd()) {
+                return section.virtualAddress + (fileOffset - section.fileOffset);
+            }
+        }
+        return -1;
+    }
+
+    // Merged [start, end) file ranges of the selected sections
+    public List<long[]> fileRanges(Collection<String> names, SectionKind kind)
+    {
+        List<long[]> ranges = new ArrayList<>();
+
+        for (Section section : sections)
+        {
+            boolean selected = (names != null && names.contains(section.name))
+                    || (kind != null && kind.matches(section));
+
+            if (selected && section.fileSize > 0) {
+                ranges.add(new long[] {section.fileOffset, section.fileEnd()});
+            }
+        }
+
+        ranges.sort(Comparator.comparingLong(r -> r[0]));
+
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges)
+        {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1]) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+
+        return merged;
+    }
+
+    private static int u16(ByteBuffer buf, int pos) {
+        return buf.getShort(pos) & 0xFFFF;
+    }
+
+    private static long u32(ByteBuffer buf, int pos) {
+        return buf.getInt(pos) & 0xFFFFFFFFL;
+    }
+
+    private static String cString(ByteBuffer buf, long pos)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = (int) pos; i < buf.limit() && buf.get(i) != 0; i++) {
+            sb.append((char) (buf.get(i) & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private static String cString(byte[] raw)
+    {
+        int len = 0;
+        while (len < raw.length && raw[len] != 0) len++;
+        return new String(raw, 0, len, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String toString() {
+        return format + " " + sections;
+    }
+}
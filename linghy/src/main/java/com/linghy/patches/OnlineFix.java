@@ -2,20 +2,13 @@ package com.linghy.patches;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 public class OnlineFix
 {
-    private static final byte[] OUTER_PATTERN = BinaryPatcher.hexToBytes(
-            "55 53 48 83 EC 38 48 8D 6C 24 40 33 C0 48 89 45"
-    );
+    private static final String PATCH_ID = "online-fix";
 
-    private static final byte[] SEARCH_PATTERN = BinaryPatcher.hexToBytes(
-            "55 53 48 83 EC 38 48 8D 6C 24 40 33 C0 48 89 45"
-    );
-
-    private static final byte[] REPLACE_PATTERN = BinaryPatcher.hexToBytes(
-            "b8 01 00 00 00 c3"
-    );
+    private static final String DEFAULT_OS = "linux";
 
     public static class PatchResult
     {
@@ -31,12 +24,15 @@ public class OnlineFix
         }
     }
 
-    public static PatchResult applyPatch(Path targetFile, PatchProgressListener listener) throws IOException
+    public static PatchResult applyPatch(Path targetFile, PatchProgressListener listener) throws IOException {
+        return applyPatch(targetFile, DEFAULT_OS, listener);
+    }
+
+    // os picks the platform's online-fix definitions, as in PatchDefinitions
+    public static PatchResult applyPatch(Path targetFile, String os, PatchProgressListener listener) throws IOException
     {
-        BinaryPatcher.SearchConfig config = new BinaryPatcher.SearchConfig()
-                .startAt(0x800000L)
-                .maxSize(50 * 1024 * 1024L)
-                .withContext(64, 64);
+        ScanPlan plan = ScanPlan.compile(PatchDefinitions.getInstance()
+                .select(PatchDefinitions.TARGET_CLIENT, PATCH_ID, os, null, false), null);
 
         BinaryPatcher.ProgressListener progressWrapper = (current, total, msg) -> {
             if (listener != null) {
@@ -46,62 +42,31 @@ public class OnlineFix
 
         try
         {
-            if (listener != null) {
-                listener.onProgress("Creating backup...");
-            }
-
-            Path backupFile = BinaryPatcher.createBackup(targetFile);
-            if (backupFile == null) {
-                return new PatchResult(false, "Failed to create backup", null);
-            }
-
             if (listener != null) {
                 listener.onProgress("Searching for pattern...");
             }
 
-            BinaryPatcher.PatternMatch match = BinaryPatcher.findNestedPattern(
-                    targetFile, OUTER_PATTERN, SEARCH_PATTERN, config, progressWrapper
-            );
+            List<ScanPlan.Hit> hits = plan.scan(targetFile, progressWrapper);
 
-            if (match == null)
-            {
-                BinaryPatcher.restoreBackup(backupFile, targetFile);
-                return new PatchResult(false, "Pattern not found", backupFile);
+            if (hits.isEmpty()) {
+                return new PatchResult(false, "Pattern not found", null);
             }
 
             if (listener != null) {
-                listener.onProgress(String.format("Pattern found at 0x%X", match.offset));
+                listener.onProgress(String.format("Pattern found at 0x%X", hits.get(0).offset));
             }
 
             if (listener != null) {
                 listener.onProgress("Applying patch...");
             }
 
-            boolean success = BinaryPatcher.replaceBytes(
-                    targetFile, match.offset, SEARCH_PATTERN, REPLACE_PATTERN
-            );
-
-            if (!success)
-            {
-                BinaryPatcher.restoreBackup(backupFile, targetFile);
-                return new PatchResult(false, "Failed to apply patch", backupFile);
-            }
-
-            if (listener != null) {
-                listener.onProgress("Verifying patch...");
-            }
-
-            if (!BinaryPatcher.verify(targetFile, match.offset, REPLACE_PATTERN))
-            {
-                BinaryPatcher.restoreBackup(backupFile, targetFile);
-                return new PatchResult(false, "Patch verification failed", backupFile);
-            }
+            plan.apply(targetFile, hits);
 
             if (listener != null) {
                 listener.onProgress("Patch applied successfully!");
             }
 
-            return new PatchResult(true, "Patch applied successfully", backupFile);
+            return new PatchResult(true, "Patch applied successfully", PatchSet.undoLogPath(targetFile));
         }
         catch (IOException e)
         {
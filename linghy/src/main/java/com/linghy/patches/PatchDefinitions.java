@@ -0,0 +1,216 @@
+package com.linghy.patches;
+
+import com.google.gson.Gson;
+import com.linghy.env.Environment;
+import com.linghy.version.GameVersion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Patch signatures and replacements, read from the bundled definitions and
+// an optional patch_definitions.json in the app dir. Entries of the override
+// replace bundled ones with the same id and label, new ones are appended, so
+// a signature can be added without shipping a new launcher
+public class PatchDefinitions
+{
+    private static final String BUNDLED_RESOURCE = "/patches/definitions.json";
+    private static final String OVERRIDE_FILE = "patch_definitions.json";
+
+    public static final String TARGET_CLIENT = "client";
+
+    private static PatchDefinitions instance;
+
+    private final List<Definition> definitions;
+
+    public static class Definition
+    {
+        public String id;
+        public String label;
+        public String target = TARGET_CLIENT;
+
+        // Applicability, null means any
+        public List<String> os;
+        public List<String> branches;
+        public Integer minPatch;
+        public Integer maxPatch;
+
+        // "code", "data" or explicit section names, null searches the whole file
+        public String section;
+        public List<String> sections;
+
+        // Either a hex signature with ?? wildcards and a hex replacement where
+        // ?? keeps the original byte, or text in one of the string encodings.
+        // Text may use {protocol} and {domain}
+        public String signature;
+        public String replacement;
+        public String text;
+        public String replacementText;
+        public String encoding = "utf8";
+
+        public boolean all = false;
+        public boolean enabled = true;
+
+        public String key() {
+            return id + "/" + getLabel();
+        }
+
+        public String getLabel() {
+            return label != null ? label : id;
+        }
+
+        public boolean appliesTo(String target, String os, GameVersion version)
+        {
+            if (!this.target.equals(target)) return false;
+            if (this.os != null && !this.os.contains(os)) return false;
+            if (version == null) return true;
+
+            if (branches != null && !branches.contains(version.getBranch())) return false;
+            if (minPatch != null && version.getPatchNumber() < minPatch) return false;
+            return maxPatch == null || version.getPatchNumber() <= maxPatch;
+        }
+
+        ExecutableLayout.SectionKind sectionKind()
+        {
+            if (section == null) return null;
+
+            return switch (section)
+            {
+                case "code" -> ExecutableLayout.SectionKind.CODE;
+                case "data" -> ExecutableLayout.SectionKind.DATA;
+                default -> throw new IllegalArgumentException(
+                        "Unknown section kind '" + section + "' in " + key());
+            };
+        }
+    }
+
+    private static class DefinitionFile
+    {
+        int version;
+        List<Definition> patches;
+    }
+
+    public PatchDefinitions(List<Definition> definitions) {
+        this.definitions = Collections.unmodifiableList(new ArrayList<>(definitions));
+    }
+
+    public static synchronized PatchDefinitions getInstance()
+    {
+        if (instance == null) {
+            instance = load(Environment.getDefaultAppDir().resolve(OVERRIDE_FILE));
+        }
+        return instance;
+    }
+
+    public static PatchDefinitions load(Path overrideFile)
+    {
+        Gson gson = new Gson();
+        Map<String, Definition> merged = new LinkedHashMap<>();
+
+        try (InputStream in = PatchDefinitions.class.getResourceAsStream(BUNDLED_RESOURCE))
+        {
+            if (in == null) {
+                throw new IOException(BUNDLED_RESOURCE + " missing from the launcher jar");
+            }
+
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                addAll(merged, gson.fromJson(reader, DefinitionFile.class));
+            }
+        }
+        catch (Exception e)
+        {
+            System.err.println("Failed to load bundled patch definitions: " + e.getMessage());
+        }
+
+        if (overrideFile != null && Files.exists(overrideFile))
+        {
+            try
+            {
+                String json = Files.readString(overrideFile, StandardCharsets.UTF_8);
+                addAll(merged, gson.fromJson(json, DefinitionFile.class));
+                System.out.println("Loaded patch definitions from " + overrideFile);
+            }
+            catch (Exception e)
+            {
+                System.err.println("Failed to load " + overrideFile.getFileName() + ": " + e.getMessage());
+            }
+        }
+
+        return new PatchDefinitions(new ArrayList<>(merged.values()));
+    }
+
+    private static void addAll(Map<String, Definition> merged, DefinitionFile file)
+    {
+        if (file == null || file.patches == null) return;
+
+        for (Definition definition : file.patches)
+        {
+            if (definition.id == null || (definition.signature == null && definition.text == null))
+            {
+                System.err.println("Skipping patch definition without id or signature: " + definition.label);
+                continue;
+            }
+            merged.put(definition.key(), definition);
+        }
+    }
+
+    public List<Definition> getDefinitions() {
+        return definitions;
+    }
+
+    // Enabled definitions for target on the current OS, in file order
+    public List<Definition> select(String target, GameVersion version) {
+        return select(target, null, version, true);
+    }
+
+    public List<Definition> select(String target, String id, GameVersion version, boolean enabledOnly) {
+        return select(target, id, Environment.getOS(), version, enabledOnly);
+    }
+
+    public List<Definition> select(String target, String id, String os, GameVersion version, boolean enabledOnly)
+    {
+        List<Definition> selected = new ArrayList<>();
+
+        for (Definition definition : definitions)
+        {
+            if (enabledOnly && !definition.enabled) continue;
+            if (id != null && !id.equals(definition.id)) continue;
+
+            if (definition.appliesTo(target, os, version)) {
+                selected.add(definition);
+            }
+        }
+
+        return selected;
+    }
+
+    static byte[] encode(String text, String encoding)
+    {
+        return switch (encoding)
+        {
+            case "utf8" -> text.getBytes(StandardCharsets.UTF_8);
+            case "utf16le" -> text.getBytes(StandardCharsets.UTF_16LE);
+            // Without the last high byte, which also matches .NET strings
+            // whose length prefix differs
+            case "utf16le-open" -> {
+                byte[] utf16 = text.getBytes(StandardCharsets.UTF_16LE);
+                yield Arrays.copyOf(utf16, utf16.length - 1);
+            }
+            // .NET string literal: int32 length, then UTF-16LE chars with the
+            // last high byte left open
+            case "dotnet" -> {
+                byte[] utf16 = text.getBytes(StandardCharsets.UTF_16LE);
+                byte[] result = new byte[4 + utf16.length - 1];
+                result[0] = (byte) text.length();
+                System.arraycopy(utf16, 0, result, 4, utf16.length - 1);
+                yield result;
+            }
+            default -> throw new IllegalArgumentException("Unknown encoding '" + encoding + "'");
+        };
+    }
+}
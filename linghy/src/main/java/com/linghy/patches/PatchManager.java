@@ -1,19 +1,27 @@
 package com.linghy.patches;
 
+import com.linghy.env.DiskUsage;
 import com.linghy.env.Environment;
 import com.linghy.model.ProgressCallback;
 import com.linghy.model.ProgressUpdate;
 import com.linghy.version.GameVersion;
 
 import java.io.IOException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
-import java.util.stream.Stream;
+import java.util.*;
 
 public class PatchManager
 {
     private static final String DEFAULT_TARGET_DOMAIN = "sanasol.ws";
+    private static final String ONLINE_FIX_PATCH_ID = "online-fix";
+    private static final String CLIENT_TASK_ID = "client-domain";
+    private static final String SERVER_PATCH_ID = "server-domain";
+    private static final int PATCH_PARALLELISM = 2;
+    private static final int REPATCH_PARALLELISM = 4;
     private String targetDomain;
 
     public PatchManager() {
@@ -53,157 +61,361 @@ public class PatchManager
             return;
         }
 
-        Path originalBackup = clientPath.resolveSibling(clientPath.getFileName() + ".original");
-        if (Files.exists(originalBackup)) {
-            System.out.println("Client already patched (backup .original exists)");
+        Path serverPath = getServerPath(version);
+        String stateKey = stateKeyOf(version);
+
+        // Only sizes and timestamps are compared here, the binaries are read
+        // again only when the domain changed or a file was replaced
+        if (PatchState.getInstance().isCurrent(stateKey, targetDomain, clientPath, serverPath)) {
+            System.out.println("Game already patched for " + targetDomain);
             if (callback != null) {
                 callback.onProgress(new ProgressUpdate("patch", 100,
-                        "Game already patched (backup found)", "", "", 0, 0));
+                        "Game already patched", "", "", 0, 0));
             }
             return;
         }
 
-        Path gameDir    = getGameDirectory(version);
-        Path serverPath = getServerPath(version);
+        PlannedVersion planned = new PlannedVersion(version, stateKey, clientPath, serverPath);
 
-        boolean clientExists = clientPath != null && Files.exists(clientPath);
-        boolean serverExists = serverPath != null && Files.exists(serverPath);
+        // Client and server are separate files, so the plan runs them side by
+        // side; each restores its own original before patching
+        PatchPlan plan = new PatchPlan(PATCH_PARALLELISM);
+        addVersionTasks(plan, planned, new DomainPatcher(targetDomain), null);
 
-        if (!clientExists && !serverExists)
+        Exception clientError = completeVersion(planned, plan.run(callback));
+        if (clientError != null) {
+            throw clientError;
+        }
+
+        if (callback != null)
         {
-            System.out.println("No game files found for version: " + version.getName());
+            callback.onProgress(new ProgressUpdate("patch", 100,
+                    "All patches completed", "", "", 0, 0));
+        }
 
-            if (callback != null) {
-                callback.onProgress(new ProgressUpdate("patch", 100,
-                        "No files to patch", "", "", 0, 0));
-            }
+        System.out.println("ensureGamePatched completed for version: " + version.getName());
+    }
 
-            return;
+    public static class RepatchResult
+    {
+        public final List<String> patched = new ArrayList<>();
+        public final List<String> upToDate = new ArrayList<>();
+        public final Map<String, Exception> failed = new LinkedHashMap<>();
+
+        @Override
+        public String toString() {
+            return String.format("RepatchResult{patched=%d, upToDate=%d, failed=%d}",
+                    patched.size(), upToDate.size(), failed.size());
         }
+    }
 
+    // Brings every installed version in line with the current domain in one
+    // pass, e.g. after the auth domain changed. All client and server steps
+    // go into a single plan, so files of different versions are restored and
+    // patched side by side with at most REPATCH_PARALLELISM at a time
+    public RepatchResult repatchInstalled(List<GameVersion> versions, ProgressCallback callback) throws IOException
+    {
+        RepatchResult result = new RepatchResult();
         DomainPatcher domainPatcher = new DomainPatcher(targetDomain);
+        PatchPlan plan = new PatchPlan(REPATCH_PARALLELISM);
+        List<PlannedVersion> planned = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
 
-        double progress = 0.0;
-        final double stepClientDomain = 20.0;
-        final double stepOnlineFix    = 25.0;
-        final double stepServerDomain = 15.0;
-
-        if (clientExists)
+        for (GameVersion version : versions)
         {
-            final double startProgress = progress;
+            String stateKey = stateKeyOf(version);
+            if (!seen.add(stateKey)) continue;
 
-            if (callback != null)
+            Path clientPath = getClientPath(version);
+            if (clientPath == null)
             {
-                callback.onProgress(new ProgressUpdate("patch", startProgress,
-                        "Patching domain in client...", "", "", 0, 0));
+                System.out.println("Skipping " + version.getName() + ", client not found");
+                continue;
             }
 
-            DomainPatcher.PatchProgressListener domainListener = (pct, msg) ->
-            {
-                if (callback != null)
-                {
-                    double sub = startProgress + (pct / 100.0) * stepClientDomain;
-                    callback.onProgress(new ProgressUpdate("patch", sub, msg, "", "", 0, 0));
-                }
-            };
-
-            try
+            Path serverPath = getServerPath(version);
+            if (PatchState.getInstance().isCurrent(stateKey, targetDomain, clientPath, serverPath))
             {
-                domainPatcher.patchClient(clientPath, domainListener);
-                progress = startProgress + stepClientDomain;
+                result.upToDate.add(version.getName());
+                continue;
             }
-            catch (Exception e)
-            {
-                System.err.println("Failed to patch domain in client: " + e.getMessage());
-                throw e;
-            }
-        }
 
-//        if (clientExists)
-//        {
-           /* final double startProgress = progress;
+            PlannedVersion entry = new PlannedVersion(version, stateKey, clientPath, serverPath);
+            addVersionTasks(plan, entry, domainPatcher, version.getName());
+            planned.add(entry);
+        }
 
-            if (callback != null)
-            {
-                callback.onProgress(new ProgressUpdate("patch", startProgress,
-                        "Applying online fix...", "", "", 0, 0));
-            }
+        if (!plan.isEmpty())
+        {
+            Map<String, Exception> failures = plan.run(callback);
 
-            if (isOnlineFixApplied(version))
+            for (PlannedVersion entry : planned)
             {
-                System.out.println("Online fix already applied (backup detected)");
-                progress = startProgress + stepOnlineFix;
-                if (callback != null)
-                {
-                    callback.onProgress(new ProgressUpdate("patch", progress,
-                            "Online fix already applied", "", "", 0, 0));
+                Exception error = completeVersion(entry, failures);
+                if (error != null) {
+                    result.failed.put(entry.version.getName(), error);
+                } else {
+                    result.patched.add(entry.version.getName());
                 }
             }
-            else
-            {
-                OnlineFixResult result = applyOnlineFix(version, (pct, msg) ->
+        }
+
+        if (callback != null)
+        {
+            callback.onProgress(new ProgressUpdate("patch", 100,
+                    String.format("Re-patched %d version(s), %d failed",
+                            result.patched.size(), result.failed.size()), "", "", 0, 0));
+        }
+
+        System.out.println("repatchInstalled completed: " + result);
+        return result;
+    }
+
+    private static class PlannedVersion
+    {
+        final GameVersion version;
+        final String stateKey;
+        final Path clientPath;
+        final Path serverPath;
+
+        PlannedVersion(GameVersion version, String stateKey, Path clientPath, Path serverPath)
+        {
+            this.version = version;
+            this.stateKey = stateKey;
+            this.clientPath = clientPath;
+            this.serverPath = serverPath;
+        }
+
+        String taskId(String step) {
+            return stateKey + "/" + step;
+        }
+    }
+
+    private void addVersionTasks(PatchPlan plan, PlannedVersion planned, DomainPatcher domainPatcher, String label)
+    {
+        PatchState.VersionState previous = PatchState.getInstance().get(planned.stateKey);
+        Path clientPath = planned.clientPath;
+        Path serverPath = planned.serverPath;
+
+        plan.add(planned.taskId(CLIENT_TASK_ID), 20,
+                List.of(clientPath),
+                List.of(clientPath, PatchSet.undoLogPath(clientPath), backupPath(clientPath)),
+                listener ->
                 {
-                    if (callback != null)
-                    {
-                        double sub = startProgress + (pct / 100.0) * stepOnlineFix;
-                        callback.onProgress(new ProgressUpdate("patch", sub, msg, "", "", 0, 0));
-                    }
+                    restoreClient(previous, clientPath);
+                    domainPatcher.patchClient(clientPath, planned.version, labelled(listener, label));
                 });
 
-                if (result.success)
-                {
-                    System.out.println("Online fix applied successfully -> " + result);
-                    progress = startProgress + stepOnlineFix;
-                }
-                else
-                {
-                    System.err.println("Online fix failed: " + result.message);
+        // The online fix also rewrites the client but stays a manual action outside the plan
 
-                    if (callback != null) {
-                        callback.onProgress(new ProgressUpdate("patch", startProgress + stepOnlineFix,
-                                "Online fix could not be applied: " + result.message, "", "", 0, 0));
-                    }
-                }
-            }*/
-//        }
+        if (serverPath != null)
+        {
+            plan.add(planned.taskId(SERVER_PATCH_ID), 15,
+                    List.of(serverPath),
+                    List.of(serverPath, backupPath(serverPath)),
+                    listener ->
+                    {
+                        restoreServer(previous, serverPath);
+                        domainPatcher.patchServer(serverPath, labelled(listener, label));
+                    });
+        }
+    }
 
-        if (serverExists)
+    // Returns the client failure, if any. A server that could not be patched
+    // does not block playing and is only tried again once the jar changes
+    private Exception completeVersion(PlannedVersion planned, Map<String, Exception> failures) throws IOException
+    {
+        // Patches rewrite files in place, which leaves directory mtimes alone
+        DiskUsage diskUsage = DiskUsage.getInstance();
+        diskUsage.invalidate(planned.clientPath.getParent());
+        if (planned.serverPath != null) {
+            diskUsage.invalidate(planned.serverPath.getParent());
+        }
+
+        Exception clientError = failures.get(planned.taskId(CLIENT_TASK_ID));
+        if (clientError != null)
         {
-            final double startProgress = progress;
+            System.err.println("Failed to patch domain in client: " + clientError.getMessage());
+            return clientError;
+        }
 
-            if (callback != null)
-            {
-                callback.onProgress(new ProgressUpdate("patch", startProgress,
-                        "Patching domain in server...", "", "", 0, 0));
+        Exception serverError = failures.get(planned.taskId(SERVER_PATCH_ID));
+        if (serverError != null) {
+            System.err.println("Failed to patch domain in server: " + serverError.getMessage());
+        }
+
+        recordState(planned.stateKey, planned.clientPath, planned.serverPath,
+                planned.serverPath != null && serverError == null);
+        return null;
+    }
+
+    private static DomainPatcher.PatchProgressListener labelled(DomainPatcher.PatchProgressListener listener,
+                                                                String label)
+    {
+        if (label == null) return listener;
+        return (pct, msg) -> listener.onProgress(pct, label + ": " + msg);
+    }
+
+    // Brings the client back to its unpatched bytes so a new domain is
+    // applied to the original. A binary that no longer matches what was
+    // patched is a fresh install and its stale undo log is dropped instead.
+    // The legacy backup is restored when the recorded state shows the live
+    // client is the one we patched, or, for installs patched before any state
+    // was kept, when it checks out as the unpatched copy of this client. It
+    // is only deleted once it is known to be redundant or stale
+    private static void restoreClient(PatchState.VersionState previous, Path clientPath) throws IOException
+    {
+        boolean restored = false;
+        try
+        {
+            restored = PatchSet.restore(clientPath);
+            if (restored) {
+                System.out.println("Client restored from undo log before re-patching");
             }
+        }
+        catch (FileSystemException e) {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            System.out.println("Client binary was replaced, discarding undo log: " + e.getMessage());
+            Files.deleteIfExists(PatchSet.undoLogPath(clientPath));
+        }
 
-            DomainPatcher.PatchProgressListener serverListener = (pct, msg) ->
-            {
-                if (callback != null)
-                {
-                    double sub = startProgress + (pct / 100.0) * stepServerDomain;
-                    callback.onProgress(new ProgressUpdate("patch", sub, msg, "", "", 0, 0));
-                }
-            };
+        Path legacyBackup = backupPath(clientPath);
+        if (!Files.exists(legacyBackup)) {
+            return;
+        }
 
-            try
-            {
-                domainPatcher.patchServer(serverPath, serverListener);
-                progress = startProgress + stepServerDomain;
+        if (restored)
+        {
+            if (Files.mismatch(legacyBackup, clientPath) == -1) {
+                Files.delete(legacyBackup);
+                System.out.println("Legacy client backup matches the restored binary, removing it");
+            } else {
+                System.out.println("Legacy client backup differs from the restored binary, keeping it");
+            }
+            return;
+        }
+
+        if (previous == null || previous.client == null)
+        {
+            if (DomainPatcher.isUnpatchedClient(legacyBackup, clientPath)) {
+                Files.move(legacyBackup, clientPath, StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Client restored from verified legacy backup before re-patching");
+            } else {
+                System.out.println("Legacy client backup is not an unpatched copy of this client, keeping it");
+            }
+            return;
+        }
+
+        if (previous.client.sameStat(clientPath)
+                || PatchSet.sha256(clientPath).equals(previous.client.patchedHash))
+        {
+            Files.move(legacyBackup, clientPath, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Client restored from legacy backup before re-patching");
+        }
+        else if (previous.client.originalHash != null
+                && PatchSet.sha256(legacyBackup).equals(previous.client.originalHash))
+        {
+            Files.delete(legacyBackup);
+            System.out.println("Client binary was replaced, discarding legacy backup of the old build");
+        }
+        else
+        {
+            System.out.println("Client binary is not the one patched, keeping unrecognised legacy backup");
+        }
+    }
+
+    // Same rules as the client, a jar without recorded state is only
+    // restored after its backup checks out as the unpatched copy
+    private static void restoreServer(PatchState.VersionState previous, Path serverPath) throws IOException
+    {
+        Path backupPath = backupPath(serverPath);
+        if (!Files.exists(backupPath)) {
+            return;
+        }
+
+        if (previous == null || previous.server == null)
+        {
+            if (DomainPatcher.isUnpatchedServer(backupPath, serverPath)) {
+                Files.move(backupPath, serverPath, StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Server restored from verified backup before re-patching");
+            } else {
+                System.out.println("Server backup is not an unpatched copy of this JAR, kept as "
+                        + setAside(backupPath).getFileName());
             }
-            catch (Exception e)
+            return;
+        }
+
+        if (previous.server.sameStat(serverPath)
+                || PatchSet.sha256(serverPath).equals(previous.server.patchedHash))
+        {
+            Files.move(backupPath, serverPath, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Server restored from backup before re-patching");
+        }
+        else if (previous.server.originalHash != null
+                && PatchSet.sha256(backupPath).equals(previous.server.originalHash))
+        {
+            Files.delete(backupPath);
+            System.out.println("Server JAR was replaced, discarding old backup");
+        }
+        else
+        {
+            System.out.println("Server JAR is not the one patched, unrecognised backup kept as "
+                    + setAside(backupPath).getFileName());
+        }
+    }
+
+    // The server patcher only backs up a jar when no backup exists, so one
+    // that could not be verified is moved out of its way rather than dropped
+    private static Path setAside(Path backup) throws IOException
+    {
+        Path aside = backup.resolveSibling(backup.getFileName() + "." + Instant.now().getEpochSecond());
+        Files.move(backup, aside);
+        return aside;
+    }
+
+    private void recordState(String stateKey, Path clientPath, Path serverPath, boolean serverPatched)
+            throws IOException
+    {
+        PatchState.VersionState state = new PatchState.VersionState();
+        state.domain = targetDomain;
+
+        if (clientPath != null)
+        {
+            PatchSet.UndoLog log = PatchSet.readUndoLog(clientPath);
+            String patchedHash = PatchSet.sha256(clientPath);
+
+            state.client = PatchState.FileState.of(clientPath,
+                    log != null ? log.originalHash : patchedHash, patchedHash);
+
+            if (log != null)
             {
-                System.err.println("Failed to patch domain in server: " + e.getMessage());
+                for (PatchSet.Entry entry : log.entries) {
+                    state.patches.merge(entry.patchId, entry.appliedAt, Math::max);
+                }
             }
         }
 
-        if (callback != null)
+        if (serverPath != null)
         {
-            callback.onProgress(new ProgressUpdate("patch", 100,
-                    "All patches completed", "", "", 0, 0));
+            Path backupPath = backupPath(serverPath);
+            String patchedHash = PatchSet.sha256(serverPath);
+
+            state.server = PatchState.FileState.of(serverPath,
+                    Files.exists(backupPath) ? PatchSet.sha256(backupPath) : patchedHash, patchedHash);
+
+            if (serverPatched) {
+                state.patches.put(SERVER_PATCH_ID, Instant.now().getEpochSecond());
+            }
         }
 
-        System.out.println("ensureGamePatched completed for version: " + version.getName());
+        PatchState.getInstance().put(stateKey, state);
+    }
+
+    private static Path backupPath(Path file) {
+        return file.resolveSibling(file.getFileName() + ".original");
     }
 
     public static class OnlineFixResult
@@ -239,30 +451,15 @@ public class PatchManager
             return new OnlineFixResult(false, "HytaleClient binary not found", null);
         }
 
-        String os = Environment.getOS().toLowerCase();
-        boolean isWindows = os.contains("win") || os.contains("nt");
-
-        byte[] outer, search, replace;
-        long startOffset;
-        long maxSearch = 50 * 1024 * 1024L;
+        // The online fix is disabled for automatic patching, but an explicit
+        // request applies it regardless
+        ScanPlan plan = ScanPlan.compile(PatchDefinitions.getInstance().select(
+                PatchDefinitions.TARGET_CLIENT, ONLINE_FIX_PATCH_ID, version, false), null);
 
-        if (isWindows) {
-            outer  = BinaryPatcher.hexToBytes("53 48 83 ec 50 0f 57 e4 0f 29 64 24 20 0f 29 64");
-            search = BinaryPatcher.hexToBytes("53 48 83 ec 50 0f 57 e4 0f 29 64 24 20 0f 29 64");
-            replace = BinaryPatcher.hexToBytes("b8 01 00 00 00 c3 57 e4 0f 29 64 24 20 0f 29 64");
-            startOffset = 0x639600L;
-        } else {
-            outer  = BinaryPatcher.hexToBytes("55 53 48 83 EC 38 48 8D 6C 24 40 33 C0 48 89 45");
-            search = BinaryPatcher.hexToBytes("55 53 48 83 EC 38 48 8D 6C 24 40 33 C0 48 89 45");
-            replace = BinaryPatcher.hexToBytes("b8 01 00 00 00 c3");
-            startOffset = 0x800000L;
+        if (plan.isEmpty()) {
+            return new OnlineFixResult(false, "No online fix defined for this platform", null);
         }
 
-        var config = new BinaryPatcher.SearchConfig()
-                .startAt(startOffset)
-                .maxSize(maxSearch)
-                .withContext(64, 64);
-
         BinaryPatcher.ProgressListener progressListener = (long cur, long tot, String msg) ->
         {
             if (listener != null) {
@@ -271,52 +468,28 @@ public class PatchManager
             }
         };
 
-        Path backup = null;
-
         try {
-            if (listener != null) listener.onProgress(5, "Creating backup...");
-            String suffix = ".onlinefix-" + Instant.now().getEpochSecond();
-            backup = BinaryPatcher.createBackup(clientPath, suffix);
-            if (backup == null) {
-                return new OnlineFixResult(false, "Failed to create backup", null);
-            }
-
             if (listener != null) listener.onProgress(20, "Locating online check function...");
-            var match = BinaryPatcher.findNestedPattern(clientPath, outer, search, config, progressListener);
+            var hits = plan.scan(clientPath, progressListener);
 
-            if (match == null)
-            {
-                BinaryPatcher.restoreBackup(backup, clientPath);
-                return new OnlineFixResult(false, "Online check signature not found", backup);
+            if (hits.isEmpty()) {
+                return new OnlineFixResult(false, "Online check signature not found", null);
             }
 
             if (listener != null) {
-                listener.onProgress(60, String.format("Found at 0x%X — applying patch...", match.offset));
-            }
-
-            boolean ok = BinaryPatcher.replaceBytes(clientPath, match.offset, search, replace);
-            if (!ok)
-            {
-                BinaryPatcher.restoreBackup(backup, clientPath);
-                return new OnlineFixResult(false, "Failed to write patch bytes", backup);
+                listener.onProgress(60, String.format("Found at 0x%X — applying patch...", hits.get(0).offset));
             }
 
-            if (!BinaryPatcher.verify(clientPath, match.offset, replace)) {
-                BinaryPatcher.restoreBackup(backup, clientPath);
-                return new OnlineFixResult(false, "Patch verification failed", backup);
-            }
+            plan.apply(clientPath, hits);
 
             if (listener != null) listener.onProgress(100, "Online fix applied successfully");
 
-            return new OnlineFixResult(true, "Online fix applied successfully", backup);
+            return new OnlineFixResult(true, "Online fix applied successfully",
+                    PatchSet.undoLogPath(clientPath));
 
         } catch (Exception e)
         {
-            if (backup != null && Files.exists(backup)) {
-                try { BinaryPatcher.restoreBackup(backup, clientPath); } catch (Exception ignored) {}
-            }
-
-            return new OnlineFixResult(false, "Error: " + e.getMessage(), backup);
+            return new OnlineFixResult(false, "Error: " + e.getMessage(), null);
         }
     }
 
@@ -327,16 +500,7 @@ public class PatchManager
             return false;
         }
 
-        try (Stream<Path> stream = Files.list(clientPath.getParent()))
-        {
-            return stream.anyMatch(p -> {
-                String name = p.getFileName().toString();
-                return name.startsWith(clientPath.getFileName().toString() + ".onlinefix-");
-            });
-        }
-        catch (IOException e) {
-            return false;
-        }
+        return PatchSet.isApplied(clientPath, ONLINE_FIX_PATCH_ID);
     }
 
     public void restoreOriginalGame(GameVersion version) throws Exception
@@ -344,19 +508,23 @@ public class PatchManager
         Path clientPath = getClientPath(version);
         Path serverPath = getServerPath(version);
         DomainPatcher.restoreOriginalGame(clientPath, serverPath);
+        PatchState.getInstance().remove(stateKeyOf(version));
     }
 
     public boolean isGamePatched(GameVersion version)
     {
         Path clientPath = getClientPath(version);
 
-        if (clientPath != null && Files.exists(clientPath))
-        {
-            Path backup = clientPath.resolveSibling(clientPath.getFileName() + ".original");
-            return Files.exists(backup);
+        if (clientPath == null || !Files.exists(clientPath)) {
+            return false;
+        }
+
+        String stateKey = stateKeyOf(version);
+        if (PatchState.getInstance().get(stateKey) == null) {
+            return DomainPatcher.isClientPatched(clientPath);
         }
 
-        return false;
+        return PatchState.getInstance().isCurrent(stateKey, targetDomain, clientPath, getServerPath(version));
     }
 
     private Path getGameDirectory(GameVersion version)
@@ -373,6 +541,10 @@ public class PatchManager
                 .resolve("game").resolve(dirName);
     }
 
+    private String stateKeyOf(GameVersion version) {
+        return getGameDirectory(version).getFileName().toString();
+    }
+
     private Path getClientPath(GameVersion version)
     {
         Path dir = getGameDirectory(version).resolve("Client");
@@ -0,0 +1,196 @@
+package com.linghy.patches;
+
+import com.linghy.model.ProgressCallback;
+import com.linghy.model.ProgressUpdate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Patch steps with the files they read and write. Steps that do not touch
+// each other's outputs run side by side on a bounded pool, the rest wait
+// for the step they depend on. A failing step only takes down the steps
+// that depend on it
+public class PatchPlan
+{
+    @FunctionalInterface
+    public interface Action
+    {
+        void run(DomainPatcher.PatchProgressListener listener) throws Exception;
+    }
+
+    private static class Task
+    {
+        final String id;
+        final double weight;
+        final Set<Path> inputs;
+        final Set<Path> outputs;
+        final Action action;
+        final List<Task> dependencies = new ArrayList<>();
+
+        Task(String id, double weight, Collection<Path> inputs, Collection<Path> outputs, Action action)
+        {
+            this.id = id;
+            this.weight = weight;
+            this.inputs = new HashSet<>(inputs);
+            this.outputs = new HashSet<>(outputs);
+            this.action = action;
+        }
+
+        boolean dependsOn(Task earlier)
+        {
+            return !Collections.disjoint(earlier.outputs, inputs)
+                    || !Collections.disjoint(earlier.outputs, outputs)
+                    || !Collections.disjoint(earlier.inputs, outputs);
+        }
+    }
+
+    private final int parallelism;
+    private final List<Task> tasks = new ArrayList<>();
+
+    public PatchPlan(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public PatchPlan add(String id, double weight, Collection<Path> inputs, Collection<Path> outputs,
+                         Action action)
+    {
+        Task task = new Task(id, weight, inputs, outputs, action);
+        for (Task earlier : tasks)
+        {
+            if (task.dependsOn(earlier)) {
+                task.dependencies.add(earlier);
+            }
+        }
+
+        tasks.add(task);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    // Returns the failure of every step that did not complete, keyed by id;
+    // an empty map means the whole plan went through
+    public Map<String, Exception> run(ProgressCallback callback) throws IOException
+    {
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        Set<Task> done = new HashSet<>();
+        List<Task> pending = new ArrayList<>(tasks);
+
+        double totalWeight = 0;
+        for (Task task : tasks) totalWeight += task.weight;
+
+        Map<Task, Double> progress = new HashMap<>();
+        final double total = totalWeight > 0 ? totalWeight : 1;
+        final Object progressLock = new Object();
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, Math.max(1, tasks.size())));
+
+        try
+        {
+            while (!pending.isEmpty())
+            {
+                List<Task> ready = new ArrayList<>();
+
+                for (Iterator<Task> it = pending.iterator(); it.hasNext(); )
+                {
+                    Task task = it.next();
+                    if (!done.containsAll(task.dependencies)) continue;
+
+                    it.remove();
+
+                    Task failed = null;
+                    for (Task dependency : task.dependencies) {
+                        if (failures.containsKey(dependency.id)) failed = dependency;
+                    }
+
+                    if (failed != null)
+                    {
+                        failures.put(task.id, new IOException("Skipped, '" + failed.id + "' failed"));
+                        done.add(task);
+                    }
+                    else
+                    {
+                        ready.add(task);
+                    }
+                }
+
+                if (ready.isEmpty()) continue;
+
+                List<Callable<Exception>> calls = new ArrayList<>();
+                for (Task task : ready)
+                {
+                    calls.add(() ->
+                    {
+                        try
+                        {
+                            task.action.run((pct, msg) ->
+                            {
+                                if (callback == null) return;
+
+                                synchronized (progressLock)
+                                {
+                                    progress.put(task, Math.max(0, Math.min(100, pct)));
+
+                                    double sum = 0;
+                                    for (Map.Entry<Task, Double> entry : progress.entrySet()) {
+                                        sum += entry.getKey().weight * entry.getValue() / 100.0;
+                                    }
+
+                                    callback.onProgress(new ProgressUpdate("patch", sum / total * 100,
+                                            msg, "", "", 0, 0));
+                                }
+                            });
+                            return null;
+                        }
+                        catch (Exception e) {
+                            return e;
+                        }
+                    });
+                }
+
+                List<Exception> results = new ArrayList<>();
+                for (Future<Exception> future : pool.invokeAll(calls)) {
+                    results.add(future.get());
+                }
+
+                for (int i = 0; i < ready.size(); i++)
+                {
+                    Task task = ready.get(i);
+                    Exception error = results.get(i);
+
+                    if (error != null)
+                    {
+                        System.err.printf("Patch step '%s' failed: %s%n", task.id, error.getMessage());
+                        failures.put(task.id, error);
+                    }
+
+                    synchronized (progressLock) {
+                        progress.put(task, 100.0);
+                    }
+                    done.add(task);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Patching interrupted");
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Patch step failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        return failures;
+    }
+}
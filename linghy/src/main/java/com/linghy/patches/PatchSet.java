@@ -0,0 +1,412 @@
+package com.linghy.patches;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+
+public class PatchSet
+{
+    public static final String UNDO_SUFFIX = ".undo";
+
+    private static final int UNDO_MAGIC = 0x4C48554E; // "LHUN"
+    private static final int UNDO_VERSION = 1;
+
+    private final Path file;
+    private final String patchId;
+    private final List<Operation> operations = new ArrayList<>();
+
+    private static class Operation
+    {
+        final long offset;
+        final byte[] expected;
+        final byte[] data;
+
+        Operation(long offset, byte[] expected, byte[] data)
+        {
+            this.offset = offset;
+            this.expected = expected;
+            this.data = data;
+        }
+    }
+
+    public PatchSet(Path file, String patchId)
+    {
+        this.file = file;
+        this.patchId = patchId;
+    }
+
+    public PatchSet makeRET(long offset) {
+        return makeRET(offset, 1);
+    }
+
+    public PatchSet makeRET(long offset, int size)
+    {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be at least 1");
+        }
+        return queue(offset, null, BinaryPatcher.retBytes(size));
+    }
+
+    public PatchSet makeNOP(long offset, int count)
+    {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be at least 1");
+        }
+        return queue(offset, null, BinaryPatcher.nopBytes(count));
+    }
+
+    public PatchSet writeDword(long offset, int value) {
+        return queue(offset, null, BinaryPatcher.dwordBytes(value));
+    }
+
+    public PatchSet writeBytes(long offset, byte[] data) {
+        return queue(offset, null, data.clone());
+    }
+
+    public PatchSet replaceBytes(long offset, byte[] expected, byte[] replacement)
+    {
+        if (replacement.length > expected.length) {
+            throw new IllegalArgumentException("Replacement longer than expected bytes");
+        }
+
+        // Same zero padding as BinaryPatcher.replaceBytes
+        byte[] data = Arrays.copyOf(replacement, expected.length);
+        return queue(offset, expected.clone(), data);
+    }
+
+    private PatchSet queue(long offset, byte[] expected, byte[] data)
+    {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        }
+        operations.add(new Operation(offset, expected, data));
+        return this;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getPatchId() {
+        return patchId;
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public UndoLog apply() throws IOException
+    {
+        Path logPath = undoLogPath(file);
+        UndoLog previous = readUndoLog(file);
+
+        if (operations.isEmpty()) {
+            return previous;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            long fileSize = channel.size();
+            List<Entry> entries = new ArrayList<>();
+            long now = Instant.now().getEpochSecond();
+
+            for (Operation op : operations)
+            {
+                if (op.offset + op.data.length > fileSize)
+                {
+                    throw new IOException(String.format("Patch at 0x%X (%d bytes) is past end of file",
+                            op.offset, op.data.length));
+                }
+
+                byte[] original = read(channel, op.offset, op.data.length);
+
+                if (op.expected != null && !Arrays.equals(original, op.expected))
+                {
+                    throw new IOException(String.format("Unexpected bytes at 0x%X: %s",
+                            op.offset, BinaryPatcher.bytesToHex(original)));
+                }
+
+                entries.add(new Entry(patchId, now, op.offset, original, op.data));
+            }
+
+            String originalHash = previous != null ? previous.originalHash : sha256(channel);
+
+            List<Entry> allEntries = new ArrayList<>();
+            if (previous != null) allEntries.addAll(previous.entries);
+            allEntries.addAll(entries);
+
+            UndoLog log = new UndoLog(originalHash, allEntries);
+
+            // The log goes to disk first so an interrupted patch can still be undone
+            writeUndoLog(logPath, log);
+
+            try
+            {
+                for (Entry entry : entries) {
+                    write(channel, entry.offset, entry.patched);
+                }
+                channel.force(false);
+
+                for (Entry entry : entries)
+                {
+                    if (!Arrays.equals(read(channel, entry.offset, entry.patched.length), entry.patched))
+                    {
+                        throw new IOException(String.format("Patch verification failed at 0x%X",
+                                entry.offset));
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                for (int i = entries.size() - 1; i >= 0; i--)
+                {
+                    Entry entry = entries.get(i);
+                    try { write(channel, entry.offset, entry.original); } catch (IOException ignored) {}
+                }
+
+                if (previous != null) {
+                    writeUndoLog(logPath, previous);
+                } else {
+                    Files.deleteIfExists(logPath);
+                }
+
+                throw e;
+            }
+
+            System.out.printf("Applied patch set '%s' (%d ranges) to %s%n",
+                    patchId, entries.size(), file.getFileName());
+            return log;
+        }
+    }
+
+    public static boolean isApplied(Path file, String patchId)
+    {
+        try {
+            UndoLog log = readUndoLog(file);
+            return log != null && log.getPatchIds().contains(patchId);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static boolean restore(Path file) throws IOException {
+        return restore(file, null);
+    }
+
+    // Undoes every range written by patchId (or all patches when null)
+    public static boolean restore(Path file, String patchId) throws IOException
+    {
+        UndoLog log = readUndoLog(file);
+        if (log == null) {
+            return false;
+        }
+
+        List<Entry> remaining = new ArrayList<>();
+        List<Entry> undo = new ArrayList<>();
+
+        for (Entry entry : log.entries)
+        {
+            if (patchId == null || patchId.equals(entry.patchId)) {
+                undo.add(entry);
+            } else {
+                remaining.add(entry);
+            }
+        }
+
+        if (undo.isEmpty()) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            for (Entry entry : undo)
+            {
+                if (entry.offset + entry.patched.length > channel.size() ||
+                        !Arrays.equals(read(channel, entry.offset, entry.patched.length), entry.patched))
+                {
+                    throw new IOException(String.format(
+                            "%s changed since it was patched (0x%X), refusing to restore",
+                            file.getFileName(), entry.offset));
+                }
+            }
+
+            for (int i = undo.size() - 1; i >= 0; i--) {
+                write(channel, undo.get(i).offset, undo.get(i).original);
+            }
+            channel.force(false);
+        }
+
+        Path logPath = undoLogPath(file);
+        if (remaining.isEmpty()) {
+            Files.deleteIfExists(logPath);
+        } else {
+            writeUndoLog(logPath, new UndoLog(log.originalHash, remaining));
+        }
+
+        System.out.printf("Restored %d patched range(s) in %s%n", undo.size(), file.getFileName());
+        return true;
+    }
+
+    public static Path undoLogPath(Path file) {
+        return file.resolveSibling(file.getFileName() + UNDO_SUFFIX);
+    }
+
+    public static UndoLog readUndoLog(Path file) throws IOException
+    {
+        Path logPath = undoLogPath(file);
+        if (!Files.exists(logPath)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath))))
+        {
+            if (in.readInt() != UNDO_MAGIC || in.readInt() != UNDO_VERSION) {
+                throw new IOException("Unsupported undo log: " + logPath);
+            }
+
+            String originalHash = in.readUTF();
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++)
+            {
+                String id = in.readUTF();
+                long appliedAt = in.readLong();
+                long offset = in.readLong();
+                byte[] original = new byte[in.readInt()];
+                in.readFully(original);
+                byte[] patched = new byte[in.readInt()];
+                in.readFully(patched);
+
+                entries.add(new Entry(id, appliedAt, offset, original, patched));
+            }
+
+            return new UndoLog(originalHash, entries);
+        }
+    }
+
+    private static void writeUndoLog(Path logPath, UndoLog log) throws IOException
+    {
+        Path tmp = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+        {
+            out.writeInt(UNDO_MAGIC);
+            out.writeInt(UNDO_VERSION);
+            out.writeUTF(log.originalHash);
+            out.writeInt(log.entries.size());
+
+            for (Entry entry : log.entries)
+            {
+                out.writeUTF(entry.patchId);
+                out.writeLong(entry.appliedAt);
+                out.writeLong(entry.offset);
+                out.writeInt(entry.original.length);
+                out.write(entry.original);
+                out.writeInt(entry.patched.length);
+                out.write(entry.patched);
+            }
+        }
+
+        Files.move(tmp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] read(FileChannel channel, long offset, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException(String.format("Could not read %d bytes at offset 0x%X", length, offset));
+            }
+        }
+        return buffer.array();
+    }
+
+    private static void write(FileChannel channel, long offset, byte[] data) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+    }
+
+    public static String sha256(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return sha256(channel);
+        }
+    }
+
+    private static String sha256(FileChannel channel) throws IOException
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            long position = 0;
+            int n;
+
+            while ((n = channel.read(buffer, position)) > 0)
+            {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+                position += n;
+            }
+
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+
+    public static class Entry
+    {
+        public final String patchId;
+        public final long appliedAt;
+        public final long offset;
+        public final byte[] original;
+        public final byte[] patched;
+
+        Entry(String patchId, long appliedAt, long offset, byte[] original, byte[] patched)
+        {
+            this.patchId = patchId;
+            this.appliedAt = appliedAt;
+            this.offset = offset;
+            this.original = original;
+            this.patched = patched;
+        }
+    }
+
+    public static class UndoLog
+    {
+        public final String originalHash;
+        public final List<Entry> entries;
+
+        UndoLog(String originalHash, List<Entry> entries)
+        {
+            this.originalHash = originalHash;
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        public Set<String> getPatchIds()
+        {
+            Set<String> ids = new LinkedHashSet<>();
+            for (Entry entry : entries) {
+                ids.add(entry.patchId);
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.linghy.patches;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.linghy.env.Environment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PatchState
+{
+    private static final String STATE_FILE = "patch_state.json";
+
+    private static PatchState instance;
+
+    private final Path stateFile;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final Map<String, VersionState> versions;
+
+    public static class FileState
+    {
+        public long size;
+        public long modifiedTime;
+        public String originalHash;
+        public String patchedHash;
+
+        public static FileState of(Path file, String originalHash, String patchedHash) throws IOException
+        {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+
+            FileState state = new FileState();
+            state.size = attrs.size();
+            state.modifiedTime = attrs.lastModifiedTime().toMillis();
+            state.originalHash = originalHash;
+            state.patchedHash = patchedHash;
+            return state;
+        }
+
+        public boolean sameStat(Path file)
+        {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                return attrs.size() == size && attrs.lastModifiedTime().toMillis() == modifiedTime;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    public static class VersionState
+    {
+        public String domain;
+        public FileState client;
+        public FileState server;
+        public Map<String, Long> patches = new LinkedHashMap<>();
+        public long updatedAt;
+    }
+
+    public PatchState(Path stateFile)
+    {
+        this.stateFile = stateFile;
+        this.versions = load(stateFile);
+    }
+
+    public static synchronized PatchState getInstance()
+    {
+        if (instance == null) {
+            instance = new PatchState(Environment.getDefaultAppDir().resolve(STATE_FILE));
+        }
+        return instance;
+    }
+
+    public synchronized VersionState get(String version) {
+        return versions.get(version);
+    }
+
+    public synchronized void put(String version, VersionState state)
+    {
+        state.updatedAt = System.currentTimeMillis();
+        versions.put(version, state);
+        save();
+    }
+
+    public synchronized void remove(String version)
+    {
+        if (versions.remove(version) != null) {
+            save();
+        }
+    }
+
+    // Stat-only check: true when the recorded domain is the one wanted and
+    // both files still look exactly as they did right after patching.
+    // A changed stat is confirmed with a full hash before giving up, so a
+    // touched but otherwise identical file only costs one read
+    public boolean isCurrent(String version, String domain, Path clientPath, Path serverPath)
+    {
+        VersionState state = get(version);
+        if (state == null || !domain.equals(state.domain)) {
+            return false;
+        }
+
+        boolean refreshed = false;
+
+        for (int i = 0; i < 2; i++)
+        {
+            Path path = i == 0 ? clientPath : serverPath;
+            FileState recorded = i == 0 ? state.client : state.server;
+
+            if (path == null || recorded == null)
+            {
+                if ((path == null) != (recorded == null)) return false;
+                continue;
+            }
+
+            if (recorded.sameStat(path)) continue;
+
+            try
+            {
+                if (!PatchSet.sha256(path).equals(recorded.patchedHash)) {
+                    return false;
+                }
+
+                FileState updated = FileState.of(path, recorded.originalHash, recorded.patchedHash);
+                if (i == 0) state.client = updated; else state.server = updated;
+                refreshed = true;
+            }
+            catch (IOException e) {
+                return false;
+            }
+        }
+
+        if (refreshed) {
+            put(version, state);
+        }
+
+        return true;
+    }
+
+    private Map<String, VersionState> load(Path file)
+    {
+        if (Files.exists(file))
+        {
+            try
+            {
+                String json = Files.readString(file, StandardCharsets.UTF_8);
+                Map<String, VersionState> loaded = gson.fromJson(json,
+                        new TypeToken<LinkedHashMap<String, VersionState>>(){}.getType());
+
+                if (loaded != null) {
+                    return loaded;
+                }
+            }
+            catch (Exception e)
+            {
+                System.err.println("Failed to load patch state: " + e.getMessage());
+            }
+        }
+
+        return new LinkedHashMap<>();
+    }
+
+    private void save()
+    {
+        try
+        {
+            Files.createDirectories(stateFile.getParent());
+            Files.writeString(stateFile, gson.toJson(versions), StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Failed to save patch state: " + e.getMessage());
+        }
+    }
+}
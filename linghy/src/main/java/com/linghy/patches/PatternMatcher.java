@@ -0,0 +1,151 @@
+package com.linghy.patches;
+
+import java.util.Arrays;
+
+public interface PatternMatcher
+{
+    int length();
+
+    // First match starting in [from, to - length()], or -1
+    int indexOf(byte[] data, int from, int to);
+
+    default boolean matchesAt(byte[] data, int offset)
+    {
+        return offset >= 0 && offset + length() <= data.length
+                && indexOf(data, offset, offset + length()) == offset;
+    }
+
+    static PatternMatcher of(byte[] pattern) {
+        return new Horspool(pattern);
+    }
+
+    static PatternMatcher of(BinaryPatcher.MaskedPattern masked)
+    {
+        for (boolean significant : masked.mask)
+        {
+            if (!significant) {
+                return new MaskedHorspool(masked.pattern, masked.mask);
+            }
+        }
+
+        return new Horspool(masked.pattern);
+    }
+
+    final class Horspool implements PatternMatcher
+    {
+        private final byte[] pattern;
+        private final int[] shift = new int[256];
+
+        public Horspool(byte[] pattern)
+        {
+            this.pattern = pattern.clone();
+
+            int m = pattern.length;
+            Arrays.fill(shift, Math.max(m, 1));
+
+            for (int i = 0; i < m - 1; i++) {
+                shift[pattern[i] & 0xFF] = m - 1 - i;
+            }
+        }
+
+        @Override
+        public int length() {
+            return pattern.length;
+        }
+
+        @Override
+        public int indexOf(byte[] data, int from, int to)
+        {
+            int m = pattern.length;
+            int end = Math.min(to, data.length) - m;
+
+            if (m == 0) {
+                return from <= end ? from : -1;
+            }
+
+            byte last = pattern[m - 1];
+            int pos = Math.max(from, 0);
+
+            while (pos <= end)
+            {
+                byte b = data[pos + m - 1];
+
+                if (b == last)
+                {
+                    int i = m - 2;
+                    while (i >= 0 && data[pos + i] == pattern[i]) {
+                        i--;
+                    }
+
+                    if (i < 0) {
+                        return pos;
+                    }
+                }
+
+                pos += shift[b & 0xFF];
+            }
+
+            return -1;
+        }
+    }
+
+    final class MaskedHorspool implements PatternMatcher
+    {
+        private final byte[] pattern;
+        private final boolean[] mask;
+        private final int[] shift = new int[256];
+
+        public MaskedHorspool(byte[] pattern, boolean[] mask)
+        {
+            if (pattern.length != mask.length) {
+                throw new IllegalArgumentException("Pattern and mask length differ");
+            }
+
+            this.pattern = pattern.clone();
+            this.mask = mask.clone();
+
+            int m = pattern.length;
+
+            // A wildcard matches every byte, so no shift may jump past the last one
+            int lastWildcard = -1;
+            for (int i = 0; i < m - 1; i++) {
+                if (!mask[i]) lastWildcard = i;
+            }
+
+            Arrays.fill(shift, Math.max(m - 1 - lastWildcard, 1));
+
+            for (int i = lastWildcard + 1; i < m - 1; i++) {
+                shift[pattern[i] & 0xFF] = m - 1 - i;
+            }
+        }
+
+        @Override
+        public int length() {
+            return pattern.length;
+        }
+
+        @Override
+        public int indexOf(byte[] data, int from, int to)
+        {
+            int m = pattern.length;
+            int end = Math.min(to, data.length) - m;
+            int pos = Math.max(from, 0);
+
+            while (pos <= end)
+            {
+                int i = m - 1;
+                while (i >= 0 && (!mask[i] || data[pos + i] == pattern[i])) {
+                    i--;
+                }
+
+                if (i < 0) {
+                    return pos;
+                }
+
+                pos += m == 0 ? 1 : shift[data[pos + m - 1] & 0xFF];
+            }
+
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.linghy.patches;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Patch definitions compiled into one multi-pattern scanner. The file is
+// read once over the union of the sections all definitions ask for, and
+// every hit is then handed back to the definition whose sections hold it
+public class ScanPlan
+{
+    public static class Step
+    {
+        public final PatchDefinitions.Definition definition;
+        public final String label;
+        final String signatureId;
+        final byte[] pattern;
+        final boolean[] mask;
+        final byte[] replacement;
+        final boolean[] keep;
+
+        Step(PatchDefinitions.Definition definition, String label, String signatureId,
+             byte[] pattern, boolean[] mask, byte[] replacement, boolean[] keep)
+        {
+            this.definition = definition;
+            this.label = label;
+            this.signatureId = signatureId;
+            this.pattern = pattern;
+            this.mask = mask;
+            this.replacement = replacement;
+            this.keep = keep;
+        }
+
+        boolean hasSectionFilter() {
+            return definition.section != null || definition.sections != null;
+        }
+    }
+
+    public static class Hit
+    {
+        public final Step step;
+        public final long offset;
+        final byte[] original;
+
+        Hit(Step step, long offset, byte[] original)
+        {
+            this.step = step;
+            this.offset = offset;
+            this.original = original;
+        }
+
+        // Replacement bytes with ?? positions taken from the original
+        byte[] patched()
+        {
+            byte[] patched = step.replacement.clone();
+            for (int i = 0; i < patched.length; i++) {
+                if (step.keep[i]) patched[i] = original[i];
+            }
+            return patched;
+        }
+    }
+
+    private final List<Step> steps;
+    private final SignatureScanner scanner;
+    private final String key;
+
+    private ScanPlan(List<Step> steps, SignatureScanner scanner)
+    {
+        this.steps = steps;
+        this.scanner = scanner;
+        this.key = keyOf(steps);
+    }
+
+    // variables fill {name} placeholders in text, replacement text and labels
+    public static ScanPlan compile(List<PatchDefinitions.Definition> definitions, Map<String, String> variables)
+    {
+        List<Step> steps = new ArrayList<>();
+        SignatureScanner scanner = new SignatureScanner();
+
+        for (PatchDefinitions.Definition definition : definitions)
+        {
+            String label = substitute(definition.getLabel(), variables);
+
+            byte[] pattern;
+            boolean[] mask;
+            byte[] replacement = null;
+            boolean[] keep = null;
+
+            // A broken entry in the override file only drops that entry
+            try
+            {
+                definition.sectionKind();
+
+                if (definition.text != null)
+                {
+                    pattern = PatchDefinitions.encode(substitute(definition.text, variables), definition.encoding);
+                    mask = new boolean[pattern.length];
+                    Arrays.fill(mask, true);
+
+                    if (definition.replacementText != null)
+                    {
+                        replacement = PatchDefinitions.encode(substitute(definition.replacementText, variables),
+                                definition.encoding);
+                        keep = new boolean[replacement.length];
+                    }
+                }
+                else
+                {
+                    BinaryPatcher.MaskedPattern signature = BinaryPatcher.MaskedPattern.fromString(definition.signature);
+                    pattern = signature.pattern;
+                    mask = signature.mask;
+
+                    if (definition.replacement != null)
+                    {
+                        BinaryPatcher.MaskedPattern masked = BinaryPatcher.MaskedPattern.fromString(definition.replacement);
+                        replacement = masked.pattern;
+                        keep = new boolean[replacement.length];
+                        for (int i = 0; i < keep.length; i++) {
+                            keep[i] = !masked.mask[i];
+                        }
+                    }
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                System.err.printf("  Skipping patch definition %s: %s%n", label, e.getMessage());
+                continue;
+            }
+
+            if (replacement != null && replacement.length > pattern.length)
+            {
+                System.err.printf("  Warning: %s replacement (%d) longer than original (%d), skipping%n",
+                        label, replacement.length, pattern.length);
+                continue;
+            }
+
+            String signatureId = steps.size() + ":" + label;
+            scanner.add(signatureId, pattern, mask);
+            steps.add(new Step(definition, label, signatureId, pattern, mask, replacement, keep));
+        }
+
+        return new ScanPlan(steps, scanner);
+    }
+
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    public List<Hit> scan(Path file, BinaryPatcher.ProgressListener listener) throws IOException
+    {
+        if (steps.isEmpty()) return List.of();
+
+        long fileSize = Files.size(file);
+        ExecutableLayout layout = null;
+
+        for (Step step : steps)
+        {
+            if (step.hasSectionFilter())
+            {
+                layout = ExecutableLayout.parse(file);
+                break;
+            }
+        }
+
+        Map<Step, List<long[]>> stepRanges = new HashMap<>();
+        List<long[]> union = new ArrayList<>();
+
+        for (Step step : steps)
+        {
+            List<long[]> ranges = rangesFor(step, layout, fileSize);
+            if (ranges.isEmpty() && step.hasSectionFilter())
+            {
+                System.err.printf("No matching sections for %s in %s, searching whole file%n",
+                        step.label, file.getFileName());
+                ranges = List.of(new long[] {0, fileSize});
+            }
+
+            stepRanges.put(step, ranges);
+            union.addAll(ranges);
+        }
+
+        BinaryPatcher.SearchConfig config = new BinaryPatcher.SearchConfig()
+                .findAll()
+                .withContext(0, 0);
+
+        Map<String, List<BinaryPatcher.PatternMatch>> matches = SignatureCache.getInstance()
+                .findSignatures(file, scanner, merge(union), config, key, listener);
+
+        Map<Step, List<Hit>> found = new LinkedHashMap<>();
+        for (Step step : steps)
+        {
+            List<Hit> hits = new ArrayList<>();
+            for (BinaryPatcher.PatternMatch match : matches.getOrDefault(step.signatureId, List.of()))
+            {
+                if (contains(stepRanges.get(step), match.offset, step.pattern.length)) {
+                    hits.add(new Hit(step, match.offset, match.context));
+                }
+            }
+            found.put(step, hits);
+        }
+
+        return resolve(found);
+    }
+
+    // In-memory variant, ranges limits every step to [start, end) offsets and
+    // null means the whole array; section constraints are left to the caller
+    public List<Hit> scan(byte[] data, List<long[]> ranges)
+    {
+        Map<Step, List<Hit>> found = new LinkedHashMap<>();
+        for (Step step : steps) {
+            found.put(step, new ArrayList<>());
+        }
+
+        Map<String, Step> byId = new HashMap<>();
+        for (Step step : steps) {
+            byId.put(step.signatureId, step);
+        }
+
+        List<long[]> searchRanges = ranges != null ? ranges : List.of(new long[] {0, data.length});
+        for (long[] range : searchRanges)
+        {
+            scanner.scan(data, (int) range[0], (int) Math.min(range[1], data.length), (sig, start) ->
+            {
+                Step step = byId.get(sig.id);
+                found.get(step).add(new Hit(step, start, Arrays.copyOfRange(data, start, start + sig.length())));
+                return true;
+            });
+        }
+
+        return resolve(found);
+    }
+
+    // Earlier steps claim their bytes first, so a hit overlapping one already
+    // taken is dropped, as if the definitions had been applied one by one.
+    // Definitions without "all" keep only their first hit
+    private List<Hit> resolve(Map<Step, List<Hit>> found)
+    {
+        TreeMap<Long, Hit> accepted = new TreeMap<>();
+
+        for (Step step : steps)
+        {
+            List<Hit> hits = found.get(step);
+            hits.sort(Comparator.comparingLong(hit -> hit.offset));
+
+            for (Hit hit : hits)
+            {
+                Map.Entry<Long, Hit> before = accepted.floorEntry(hit.offset + step.pattern.length - 1);
+                if (before != null && before.getKey() + before.getValue().step.pattern.length > hit.offset) {
+                    continue;
+                }
+
+                accepted.put(hit.offset, hit);
+                if (!step.definition.all) break;
+            }
+        }
+
+        return new ArrayList<>(accepted.values());
+    }
+
+    // Writes every hit through one PatchSet per definition id, so each id
+    // can be restored on its own. Returns the number of ranges per id
+    public Map<String, Integer> apply(Path file, List<Hit> hits) throws IOException
+    {
+        Map<String, PatchSet> patchSets = new LinkedHashMap<>();
+        Map<String, Integer> counts = new LinkedHashMap<>();
+
+        for (Hit hit : hits)
+        {
+            if (hit.step.replacement == null) continue;
+
+            String id = hit.step.definition.id;
+            patchSets.computeIfAbsent(id, k -> new PatchSet(file, k))
+                    .replaceBytes(hit.offset, hit.original, hit.patched());
+            counts.merge(id, 1, Integer::sum);
+        }
+
+        for (PatchSet patchSet : patchSets.values()) {
+            patchSet.apply();
+        }
+
+        return counts;
+    }
+
+    public byte[] apply(byte[] data, List<Hit> hits)
+    {
+        byte[] result = Arrays.copyOf(data, data.length);
+
+        for (Hit hit : hits)
+        {
+            if (hit.step.replacement == null) continue;
+
+            byte[] patched = Arrays.copyOf(hit.patched(), hit.step.pattern.length);
+            System.arraycopy(patched, 0, result, (int) hit.offset, patched.length);
+        }
+
+        return result;
+    }
+
+    public static void logHits(List<Hit> hits)
+    {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Hit hit : hits) {
+            counts.merge(hit.step.label, 1, Integer::sum);
+        }
+
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            System.out.printf("  Patched %s: %d occurrences%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    // Names the selected definitions and the sections they search, so cached
+    // offsets are only reused for the same plan; patterns are checked by the
+    // cache itself
+    private static String keyOf(List<Step> steps)
+    {
+        StringBuilder key = new StringBuilder();
+        for (Step step : steps)
+        {
+            PatchDefinitions.Definition definition = step.definition;
+            key.append(step.signatureId).append('|')
+                    .append(definition.id).append('|')
+                    .append(definition.section).append('|')
+                    .append(definition.sections).append(';');
+        }
+        return steps.size() + "-" + Integer.toHexString(key.toString().hashCode());
+    }
+
+    private static List<long[]> rangesFor(Step step, ExecutableLayout layout, long fileSize)
+    {
+        if (!step.hasSectionFilter()) {
+            return List.of(new long[] {0, fileSize});
+        }
+
+        if (layout == null) {
+            return List.of();
+        }
+
+        PatchDefinitions.Definition definition = step.definition;
+        return layout.fileRanges(definition.sections, definition.sectionKind());
+    }
+
+    private static List<long[]> merge(List<long[]> ranges)
+    {
+        List<long[]> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(range -> range[0]));
+
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : sorted)
+        {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1]) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(new long[] {range[0], range[1]});
+            }
+        }
+
+        return merged;
+    }
+
+    private static boolean contains(List<long[]> ranges, long offset, int length)
+    {
+        for (long[] range : ranges)
+        {
+            if (offset >= range[0] && offset + length <= range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String substitute(String text, Map<String, String> variables)
+    {
+        if (text == null || variables == null) return text;
+
+        String result = text;
+        for (Map.Entry<String, String> entry : variables.entrySet()) {
+            result = result.replace("{" + entry.getKey() + "}", entry.getValue());
+        }
+        return result;
+    }
+}
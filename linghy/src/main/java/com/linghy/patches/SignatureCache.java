@@ -0,0 +1,229 @@
+package com.linghy.patches;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.linghy.env.Environment;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class SignatureCache
+{
+    private static final String CACHE_FILE = "signature_cache.json";
+    private static final int MAX_BINARIES = 16;
+
+    private static SignatureCache instance;
+
+    private final Path cacheFile;
+    private final Gson gson = new Gson();
+    private final LinkedHashMap<String, Map<String, CachedSignature>> entries;
+
+    private static class CachedSignature
+    {
+        int patternHash;
+        String scope;
+        List<Long> offsets;
+
+        CachedSignature(int patternHash, String scope, List<Long> offsets)
+        {
+            this.patternHash = patternHash;
+            this.scope = scope;
+            this.offsets = offsets;
+        }
+    }
+
+    public SignatureCache(Path cacheFile)
+    {
+        this.cacheFile = cacheFile;
+        this.entries = load(cacheFile);
+    }
+
+    public static synchronized SignatureCache getInstance()
+    {
+        if (instance == null) {
+            instance = new SignatureCache(Environment.getDefaultAppDir().resolve(CACHE_FILE));
+        }
+        return instance;
+    }
+
+    public Map<String, List<BinaryPatcher.PatternMatch>> findSignatures(Path file, SignatureScanner scanner,
+                                                                        BinaryPatcher.SearchConfig config,
+                                                                        BinaryPatcher.ProgressListener listener)
+            throws IOException
+    {
+        return findSignatures(file, scanner, config, "", scopeOf(config),
+                () -> BinaryPatcher.findSignatures(file, scanner, config, listener));
+    }
+
+    // For a compiled ScanPlan: planKey stands for the definitions and the
+    // sections they search, ranges are the file ranges derived from them
+    public Map<String, List<BinaryPatcher.PatternMatch>> findSignatures(Path file, SignatureScanner scanner,
+                                                                        List<long[]> ranges,
+                                                                        BinaryPatcher.SearchConfig config,
+                                                                        String planKey,
+                                                                        BinaryPatcher.ProgressListener listener)
+            throws IOException
+    {
+        return findSignatures(file, scanner, config, "#" + planKey, scopeOf(config),
+                () -> BinaryPatcher.findSignatures(file, scanner, ranges, config, listener));
+    }
+
+    private interface Scan
+    {
+        Map<String, List<BinaryPatcher.PatternMatch>> run() throws IOException;
+    }
+
+    private Map<String, List<BinaryPatcher.PatternMatch>> findSignatures(Path file, SignatureScanner scanner,
+                                                                         BinaryPatcher.SearchConfig config,
+                                                                         String keySuffix, String scope,
+                                                                         Scan scan)
+            throws IOException
+    {
+        // Each plan gets its own entry per binary, so the client and domain
+        // plans do not evict each other's offsets
+        String key = BinaryFingerprint.of(file).key() + keySuffix;
+
+        Map<String, List<BinaryPatcher.PatternMatch>> cached = lookup(file, key, scope, scanner, config);
+        if (cached != null)
+        {
+            System.out.println("Signature offsets resolved from cache for " + file.getFileName());
+            return cached;
+        }
+
+        Map<String, List<BinaryPatcher.PatternMatch>> results = scan.run();
+
+        Map<String, CachedSignature> resolved = new HashMap<>();
+        for (SignatureScanner.Signature sig : scanner.getSignatures())
+        {
+            List<Long> offsets = new ArrayList<>();
+            for (BinaryPatcher.PatternMatch match : results.get(sig.id)) {
+                offsets.add(match.offset);
+            }
+            resolved.put(sig.id, new CachedSignature(patternHash(sig), scope, offsets));
+        }
+
+        store(key, resolved);
+        return results;
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+        save();
+    }
+
+    private Map<String, List<BinaryPatcher.PatternMatch>> lookup(Path file, String key, String scope,
+                                                                 SignatureScanner scanner,
+                                                                 BinaryPatcher.SearchConfig config)
+            throws IOException
+    {
+        Map<String, CachedSignature> known;
+        synchronized (this)
+        {
+            known = entries.get(key);
+            if (known == null) return null;
+            known = new HashMap<>(known);
+        }
+
+        Map<String, List<BinaryPatcher.PatternMatch>> results = new LinkedHashMap<>();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r"))
+        {
+            for (SignatureScanner.Signature sig : scanner.getSignatures())
+            {
+                CachedSignature entry = known.get(sig.id);
+                if (entry == null || entry.patternHash != patternHash(sig) || !scope.equals(entry.scope)) {
+                    return null;
+                }
+
+                List<BinaryPatcher.PatternMatch> matches = new ArrayList<>();
+                byte[] actual = new byte[sig.length()];
+
+                // Hits are confirmed against the bytes on disk; a miss means the
+                // sampled fingerprint was not enough and a full scan is needed
+                for (long offset : entry.offsets)
+                {
+                    if (offset < 0 || offset + sig.length() > raf.length()) return null;
+
+                    raf.seek(offset);
+                    raf.readFully(actual);
+                    if (!sig.matchesAt(actual, 0)) return null;
+
+                    matches.add(new BinaryPatcher.PatternMatch(offset,
+                            BinaryPatcher.readContext(raf, offset, sig.length(),
+                                    config.contextBefore, config.contextAfter),
+                            config.contextBefore,
+                            config.contextBefore + sig.length()));
+                }
+
+                results.computeIfAbsent(sig.id, k -> new ArrayList<>()).addAll(matches);
+            }
+        }
+
+        return results;
+    }
+
+    private synchronized void store(String key, Map<String, CachedSignature> resolved)
+    {
+        Map<String, CachedSignature> known = entries.remove(key);
+        if (known == null) known = new HashMap<>();
+
+        known.putAll(resolved);
+        entries.put(key, known);
+
+        while (entries.size() > MAX_BINARIES) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+
+        save();
+    }
+
+    private static String scopeOf(BinaryPatcher.SearchConfig config) {
+        return config.startOffset + ":" + config.maxSearchSize + ":" + config.findAll
+                + ":" + config.sectionNames + ":" + config.sectionKind;
+    }
+
+    private static int patternHash(SignatureScanner.Signature sig) {
+        return 31 * Arrays.hashCode(sig.pattern) + Arrays.hashCode(sig.mask);
+    }
+
+    private LinkedHashMap<String, Map<String, CachedSignature>> load(Path file)
+    {
+        if (Files.exists(file))
+        {
+            try
+            {
+                String json = Files.readString(file, StandardCharsets.UTF_8);
+                LinkedHashMap<String, Map<String, CachedSignature>> loaded = gson.fromJson(json,
+                        new TypeToken<LinkedHashMap<String, Map<String, CachedSignature>>>(){}.getType());
+
+                if (loaded != null) {
+                    return loaded;
+                }
+            }
+            catch (Exception e)
+            {
+                System.err.println("Failed to load signature cache: " + e.getMessage());
+            }
+        }
+
+        return new LinkedHashMap<>();
+    }
+
+    private void save()
+    {
+        try
+        {
+            Files.createDirectories(cacheFile.getParent());
+            Files.writeString(cacheFile, gson.toJson(entries), StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Failed to save signature cache: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.linghy.patches;
+
+import java.util.*;
+
+public class SignatureScanner
+{
+    private final List<Signature> signatures = new ArrayList<>();
+
+    private int[][] transitions;
+    private int[][] outputs;
+
+    public static class Signature
+    {
+        public final String id;
+        public final byte[] pattern;
+        public final boolean[] mask;
+
+        final int anchorStart;
+        final int anchorLength;
+        final boolean needsVerify;
+
+        Signature(String id, byte[] pattern, boolean[] mask)
+        {
+            this.id = id;
+            this.pattern = pattern.clone();
+            this.mask = mask.clone();
+
+            // The longest run of significant bytes drives the automaton,
+            // wildcards around it are checked once the run is hit
+            int bestStart = -1, bestLength = 0;
+            int runStart = -1;
+
+            for (int i = 0; i <= mask.length; i++)
+            {
+                if (i < mask.length && mask[i])
+                {
+                    if (runStart < 0) runStart = i;
+                }
+                else if (runStart >= 0)
+                {
+                    if (i - runStart > bestLength)
+                    {
+                        bestStart = runStart;
+                        bestLength = i - runStart;
+                    }
+                    runStart = -1;
+                }
+            }
+
+            if (bestLength == 0) {
+                throw new IllegalArgumentException("Signature '" + id + "' has no fixed bytes");
+            }
+
+            this.anchorStart = bestStart;
+            this.anchorLength = bestLength;
+            this.needsVerify = bestLength != pattern.length;
+        }
+
+        public int length() {
+            return pattern.length;
+        }
+
+        boolean matchesAt(byte[] data, int offset)
+        {
+            for (int i = 0; i < pattern.length; i++)
+            {
+                if (mask[i] && data[offset + i] != pattern[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    public interface HitConsumer {
+        // Return false to stop the scan
+        boolean onHit(Signature signature, int offset);
+    }
+
+    public SignatureScanner add(String id, byte[] pattern)
+    {
+        boolean[] mask = new boolean[pattern.length];
+        Arrays.fill(mask, true);
+        return add(id, pattern, mask);
+    }
+
+    public SignatureScanner add(String id, BinaryPatcher.MaskedPattern masked) {
+        return add(id, masked.pattern, masked.mask);
+    }
+
+    public synchronized SignatureScanner add(String id, byte[] pattern, boolean[] mask)
+    {
+        if (pattern.length != mask.length) {
+            throw new IllegalArgumentException("Pattern and mask length differ for '" + id + "'");
+        }
+
+        signatures.add(new Signature(id, pattern, mask));
+        transitions = null;
+        return this;
+    }
+
+    public List<Signature> getSignatures() {
+        return Collections.unmodifiableList(signatures);
+    }
+
+    public boolean isEmpty() {
+        return signatures.isEmpty();
+    }
+
+    public int maxLength()
+    {
+        int max = 0;
+        for (Signature s : signatures) {
+            max = Math.max(max, s.length());
+        }
+        return max;
+    }
+
+    // Reports every signature fully contained in [from, to)
+    public void scan(byte[] data, int from, int to, HitConsumer consumer)
+    {
+        compile();
+
+        int[][] delta = transitions;
+        int[][] out = outputs;
+        int end = Math.min(to, data.length);
+        int state = 0;
+
+        for (int i = Math.max(from, 0); i < end; i++)
+        {
+            state = delta[state][data[i] & 0xFF];
+
+            int[] hits = out[state];
+            if (hits.length == 0) continue;
+
+            for (int index : hits)
+            {
+                Signature sig = signatures.get(index);
+                int start = i - sig.anchorLength + 1 - sig.anchorStart;
+
+                if (start < from || start + sig.length() > end) continue;
+                if (sig.needsVerify && !sig.matchesAt(data, start)) continue;
+
+                if (!consumer.onHit(sig, start)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private synchronized void compile()
+    {
+        if (transitions != null) return;
+
+        List<int[]> delta = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        delta.add(newState());
+        out.add(new ArrayList<>());
+
+        for (int index = 0; index < signatures.size(); index++)
+        {
+            Signature sig = signatures.get(index);
+            int state = 0;
+
+            for (int i = sig.anchorStart; i < sig.anchorStart + sig.anchorLength; i++)
+            {
+                int b = sig.pattern[i] & 0xFF;
+                if (delta.get(state)[b] < 0)
+                {
+                    delta.get(state)[b] = delta.size();
+                    delta.add(newState());
+                    out.add(new ArrayList<>());
+                }
+                state = delta.get(state)[b];
+            }
+
+            out.get(state).add(index);
+        }
+
+        int[] fail = new int[delta.size()];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+        for (int b = 0; b < 256; b++)
+        {
+            int next = delta.get(0)[b];
+            if (next < 0) {
+                delta.get(0)[b] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+
+        while (!queue.isEmpty())
+        {
+            int state = queue.poll();
+            out.get(state).addAll(out.get(fail[state]));
+
+            for (int b = 0; b < 256; b++)
+            {
+                int next = delta.get(state)[b];
+                if (next < 0) {
+                    delta.get(state)[b] = delta.get(fail[state])[b];
+                } else {
+                    fail[next] = delta.get(fail[state])[b];
+                    queue.add(next);
+                }
+            }
+        }
+
+        int[][] compiledOut = new int[out.size()][];
+        for (int i = 0; i < out.size(); i++) {
+            compiledOut[i] = out.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        outputs = compiledOut;
+        transitions = delta.toArray(new int[0][]);
+    }
+
+    private static int[] newState()
+    {
+        int[] state = new int[256];
+        Arrays.fill(state, -1);
+        return state;
+    }
+}
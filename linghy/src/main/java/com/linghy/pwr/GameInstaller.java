@@ -4,11 +4,11 @@ import com.linghy.butler.ButlerInstaller;
 import com.linghy.env.Environment;
 import com.linghy.model.ProgressCallback;
 import com.linghy.model.ProgressUpdate;
+import com.linghy.utils.FileTree;
 import com.linghy.version.GameVersion;
 
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 
 public class GameInstaller
 {
@@ -115,29 +115,11 @@ public class GameInstaller
             throw new Exception("Butler apply failed with exit code: " + exitCode);
         }
 
-        deleteRecursively(stagingDir);
+        FileTree.delete(stagingDir);
 
         System.out.println("Game extracted successfully to: " + targetDir);
         callback.onProgress(new ProgressUpdate("game", 100,
                 "Game installed successfully", "", "", 0, 0));
     }
 
-    private static void deleteRecursively(Path path) throws IOException
-    {
-        if (!Files.exists(path)) return;
-
-        Files.walkFileTree(path, new SimpleFileVisitor<>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                Files.delete(file);
-                return FileVisitResult.CONTINUE;
-            }
-
-            @Override
-            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                Files.delete(dir);
-                return FileVisitResult.CONTINUE;
-            }
-        });
-    }
 }
\ No newline at end of file
@@ -0,0 +1,618 @@
+package com.linghy.utils;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+// Recursive file tree operations on a work-stealing pool. Every directory is
+// its own task, so wide trees spread over all workers and deep ones are
+// stolen from. Symlinks are never followed.
+//
+// Files are copied by cloning where the filesystem can (FICLONE on Linux,
+// clonefile on macOS), which shares blocks until either side is written, and
+// with FileChannel.transferTo otherwise. Hard links are opt-in only: the
+// launcher patches game files in place, which would write through to a
+// hard-linked backup
+public class FileTree
+{
+    private static final int PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final long REPORT_INTERVAL_MS = 200;
+
+    private static ForkJoinPool sharedPool;
+
+    public interface ProgressListener
+    {
+        void onProgress(long files, long bytes, double bytesPerSecond);
+    }
+
+    public static class Options
+    {
+        ForkJoinPool pool;
+        Predicate<Path> filter;
+        ProgressListener listener;
+        boolean hardLinks;
+
+        public Options pool(ForkJoinPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
+
+        // Sees paths relative to the source root; skipped directories are
+        // not descended into. Applies to copy only
+        public Options filter(Predicate<Path> filter)
+        {
+            this.filter = filter;
+            return this;
+        }
+
+        public Options progress(ProgressListener listener)
+        {
+            this.listener = listener;
+            return this;
+        }
+
+        public Options hardLinks()
+        {
+            this.hardLinks = true;
+            return this;
+        }
+    }
+
+    public static class Stats
+    {
+        public final long files;
+        public final long bytes;
+        public final long millis;
+
+        Stats(long files, long bytes, long millis)
+        {
+            this.files = files;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+
+        public double bytesPerSecond() {
+            return millis > 0 ? bytes * 1000.0 / millis : 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%d files, %.1f MB in %d ms (%.1f MB/s)",
+                    files, bytes / 1048576.0, millis, bytesPerSecond() / 1048576.0);
+        }
+    }
+
+    public static Stats delete(Path root) throws IOException {
+        return delete(root, new Options());
+    }
+
+    public static Stats delete(Path root, ForkJoinPool pool) throws IOException {
+        return delete(root, new Options().pool(pool));
+    }
+
+    // Keeps going past failures and throws the first one at the end, with
+    // the others suppressed
+    public static Stats delete(Path root, Options options) throws IOException
+    {
+        Operation op = new Operation(options);
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return op.finish();
+        }
+
+        if (!attrs.isDirectory())
+        {
+            Files.deleteIfExists(root);
+            op.count(attrs.size());
+            return op.finish();
+        }
+
+        rethrow(op.pool().invoke(new DeleteTask(op, root)));
+        return op.finish();
+    }
+
+    // Copies the contents of source into target, creating target and
+    // replacing files that already exist there
+    public static Stats copy(Path source, Path target, Options options) throws IOException
+    {
+        Operation op = new Operation(options);
+
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.isDirectory())
+        {
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            op.copyFile(source, target, attrs);
+            return op.finish();
+        }
+
+        rethrow(op.pool().invoke(new CopyTask(op, source, source, target)));
+        return op.finish();
+    }
+
+    public static Stats copy(Path source, Path target) throws IOException {
+        return copy(source, target, new Options());
+    }
+
+    // Renames source to target in one step when target does not exist yet,
+    // otherwise merges it in entry by entry, renaming whole subtrees where
+    // the target has none. Crossing filesystems falls back to copy and delete
+    public static Stats move(Path source, Path target, Options options) throws IOException
+    {
+        Operation op = new Operation(options);
+
+        if (!Files.exists(target, LinkOption.NOFOLLOW_LINKS))
+        {
+            try
+            {
+                if (target.getParent() != null) {
+                    Files.createDirectories(target.getParent());
+                }
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                op.count(0);
+                return op.finish();
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Stats copied = copy(source, target, options);
+                delete(source, options.pool);
+                return copied;
+            }
+        }
+
+        rethrow(op.pool().invoke(new MoveTask(op, source, target)));
+        return op.finish();
+    }
+
+    public static Stats move(Path source, Path target) throws IOException {
+        return move(source, target, new Options());
+    }
+
+    private static synchronized ForkJoinPool sharedPool()
+    {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool(PARALLELISM);
+        }
+        return sharedPool;
+    }
+
+    // State of one delete, copy or move call
+    private static class Operation
+    {
+        final Options options;
+        final long started = System.currentTimeMillis();
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong lastReport = new AtomicLong(started);
+        final AtomicBoolean cloneFailed = new AtomicBoolean();
+
+        Operation(Options options) {
+            this.options = options;
+        }
+
+        ForkJoinPool pool() {
+            return options.pool != null ? options.pool : sharedPool();
+        }
+
+        void count(long size)
+        {
+            files.incrementAndGet();
+            bytes.addAndGet(size);
+
+            if (options.listener == null) return;
+
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            if (now - last >= REPORT_INTERVAL_MS && lastReport.compareAndSet(last, now)) {
+                report(now);
+            }
+        }
+
+        void report(long now)
+        {
+            long elapsed = Math.max(1, now - started);
+            options.listener.onProgress(files.get(), bytes.get(), bytes.get() * 1000.0 / elapsed);
+        }
+
+        Stats finish()
+        {
+            long now = System.currentTimeMillis();
+            if (options.listener != null) {
+                report(now);
+            }
+            return new Stats(files.get(), bytes.get(), now - started);
+        }
+
+        void copyFile(Path source, Path target, BasicFileAttributes attrs) throws IOException
+        {
+            if (attrs.isSymbolicLink())
+            {
+                Files.deleteIfExists(target);
+                Files.copy(source, target, LinkOption.NOFOLLOW_LINKS);
+                count(0);
+                return;
+            }
+
+            if (options.hardLinks)
+            {
+                try
+                {
+                    Files.deleteIfExists(target);
+                    Files.createLink(target, source);
+                    count(attrs.size());
+                    return;
+                }
+                catch (UnsupportedOperationException | FileSystemException e) {
+                    // Other filesystem or no link support, copy instead
+                }
+            }
+
+            if (cloneFailed.get() || !Cloner.clone(source, target))
+            {
+                cloneFailed.set(true);
+                transfer(source, target, attrs.size());
+            }
+
+            copyAttributes(source, target, attrs);
+            count(attrs.size());
+        }
+    }
+
+    private static void transfer(Path source, Path target, long size) throws IOException
+    {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            long position = 0;
+            while (position < size)
+            {
+                long sent = in.transferTo(position, size - position, out);
+                if (sent <= 0) break;
+                position += sent;
+            }
+        }
+    }
+
+    // Modification time and, where there are any, POSIX permissions so the
+    // game executables stay executable
+    private static void copyAttributes(Path source, Path target, BasicFileAttributes attrs) throws IOException
+    {
+        Files.setLastModifiedTime(target, attrs.lastModifiedTime());
+
+        PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (view != null)
+        {
+            PosixFileAttributes posix = Files.readAttributes(source, PosixFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            view.setPermissions(posix.permissions());
+        }
+    }
+
+    private static class DeleteTask extends RecursiveTask<List<IOException>>
+    {
+        private final Operation op;
+        private final Path dir;
+
+        DeleteTask(Operation op, Path dir)
+        {
+            this.op = op;
+            this.dir = dir;
+        }
+
+        @Override
+        protected List<IOException> compute()
+        {
+            List<IOException> errors = new ArrayList<>();
+            List<DeleteTask> subtasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir))
+            {
+                for (Path entry : entries)
+                {
+                    try
+                    {
+                        BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+
+                        if (attrs.isDirectory())
+                        {
+                            DeleteTask task = new DeleteTask(op, entry);
+                            task.fork();
+                            subtasks.add(task);
+                        }
+                        else
+                        {
+                            Files.deleteIfExists(entry);
+                            op.count(attrs.size());
+                        }
+                    }
+                    catch (NoSuchFileException ignored) {
+                        // ...
+                    }
+                    catch (IOException e) {
+                        errors.add(e);
+                    }
+                }
+            }
+            catch (NoSuchFileException e) {
+                return errors;
+            }
+            catch (IOException e) {
+                errors.add(e);
+            }
+
+            for (DeleteTask task : subtasks) {
+                errors.addAll(task.join());
+            }
+
+            if (errors.isEmpty())
+            {
+                try {
+                    Files.deleteIfExists(dir);
+                } catch (IOException e) {
+                    errors.add(e);
+                }
+            }
+
+            return errors;
+        }
+    }
+
+    private static class CopyTask extends RecursiveTask<List<IOException>>
+    {
+        private final Operation op;
+        private final Path root;
+        private final Path source;
+        private final Path target;
+
+        CopyTask(Operation op, Path root, Path source, Path target)
+        {
+            this.op = op;
+            this.root = root;
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        protected List<IOException> compute()
+        {
+            List<IOException> errors = new ArrayList<>();
+            List<CopyTask> subtasks = new ArrayList<>();
+
+            try
+            {
+                Files.createDirectories(target);
+
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(source))
+                {
+                    for (Path entry : entries)
+                    {
+                        if (op.options.filter != null && !op.options.filter.test(root.relativize(entry))) {
+                            continue;
+                        }
+
+                        Path destination = target.resolve(entry.getFileName().toString());
+
+                        try
+                        {
+                            BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+                                    LinkOption.NOFOLLOW_LINKS);
+
+                            if (attrs.isDirectory())
+                            {
+                                CopyTask task = new CopyTask(op, root, entry, destination);
+                                task.fork();
+                                subtasks.add(task);
+                            }
+                            else
+                            {
+                                op.copyFile(entry, destination, attrs);
+                            }
+                        }
+                        catch (IOException e) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            }
+            catch (IOException e) {
+                errors.add(e);
+            }
+
+            for (CopyTask task : subtasks) {
+                errors.addAll(task.join());
+            }
+
+            try {
+                Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+            } catch (IOException ignored) {
+                // ...
+            }
+
+            return errors;
+        }
+    }
+
+    private static class MoveTask extends RecursiveTask<List<IOException>>
+    {
+        private final Operation op;
+        private final Path source;
+        private final Path target;
+
+        MoveTask(Operation op, Path source, Path target)
+        {
+            this.op = op;
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        protected List<IOException> compute()
+        {
+            List<IOException> errors = new ArrayList<>();
+            List<MoveTask> subtasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(source))
+            {
+                for (Path entry : entries)
+                {
+                    Path destination = target.resolve(entry.getFileName().toString());
+
+                    try
+                    {
+                        BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+
+                        if (attrs.isDirectory() && Files.isDirectory(destination, LinkOption.NOFOLLOW_LINKS))
+                        {
+                            MoveTask task = new MoveTask(op, entry, destination);
+                            task.fork();
+                            subtasks.add(task);
+                        }
+                        else if (attrs.isDirectory())
+                        {
+                            // move() copes with another filesystem
+                            move(entry, destination, op.options);
+                            op.count(0);
+                        }
+                        else
+                        {
+                            Files.move(entry, destination, StandardCopyOption.REPLACE_EXISTING);
+                            op.count(attrs.size());
+                        }
+                    }
+                    catch (IOException e) {
+                        errors.add(e);
+                    }
+                }
+            }
+            catch (IOException e) {
+                errors.add(e);
+            }
+
+            for (MoveTask task : subtasks) {
+                errors.addAll(task.join());
+            }
+
+            if (errors.isEmpty())
+            {
+                try {
+                    Files.deleteIfExists(source);
+                } catch (IOException e) {
+                    errors.add(e);
+                }
+            }
+
+            return errors;
+        }
+    }
+
+    private static void rethrow(List<IOException> errors) throws IOException
+    {
+        if (errors.isEmpty()) return;
+
+        IOException first = errors.get(0);
+        for (int i = 1; i < errors.size(); i++) {
+            first.addSuppressed(errors.get(i));
+        }
+        throw first;
+    }
+
+    // Copy-on-write file clones through libc. Returns false when the OS or
+    // filesystem has no support, the caller then copies the bytes
+    private static class Cloner
+    {
+        private static final NativeLong FICLONE = new NativeLong(0x40049409L);
+        private static final int O_RDONLY = 0;
+        private static final int O_WRONLY_CREAT_TRUNC = 0x241;
+
+        private static final String OS = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        private static volatile boolean unavailable;
+        private static LibC libc;
+
+        interface LibC extends Library
+        {
+            int open(String path, int flags, int mode);
+            int close(int fd);
+            int ioctl(int fd, NativeLong request, int arg);
+            int clonefile(String source, String target, int flags);
+        }
+
+        static boolean clone(Path source, Path target)
+        {
+            if (unavailable) return false;
+
+            try
+            {
+                if (OS.contains("linux")) return ficlone(source, target);
+                if (OS.contains("mac")) return clonefile(source, target);
+            }
+            catch (UnsatisfiedLinkError | NoClassDefFoundError | IOException e)
+            {
+                // No JNA or no such call, do not try again
+            }
+
+            unavailable = true;
+            return false;
+        }
+
+        private static synchronized LibC libc()
+        {
+            if (libc == null) {
+                libc = Native.load("c", LibC.class);
+            }
+            return libc;
+        }
+
+        private static boolean ficlone(Path source, Path target)
+        {
+            LibC c = libc();
+
+            int in = c.open(source.toString(), O_RDONLY, 0);
+            if (in < 0) return false;
+
+            try
+            {
+                int out = c.open(target.toString(), O_WRONLY_CREAT_TRUNC, 0644);
+                if (out < 0) return false;
+
+                try {
+                    return c.ioctl(out, FICLONE, in) == 0;
+                } finally {
+                    c.close(out);
+                }
+            }
+            finally {
+                c.close(in);
+            }
+        }
+
+        private static boolean clonefile(Path source, Path target) throws IOException
+        {
+            Files.deleteIfExists(target);
+            return libc().clonefile(source.toString(), target.toString(), 0) == 0;
+        }
+    }
+}
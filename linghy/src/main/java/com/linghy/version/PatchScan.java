@@ -0,0 +1,312 @@
+package com.linghy.version;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// One scan of a branch on the patch CDN. Probes are HEAD requests sent with
+// sendAsync and the number in flight is adjusted AIMD style: it grows by one
+// per window of quick answers and halves on an error or a slow answer, so a
+// struggling host is backed off from and a fast one is used fully. Each
+// patch is handed to the listener as soon as its probe confirms it
+class PatchScan
+{
+    private static final int MAX_PATCH_NUMBER = 1 << 16;
+    private static final int BOUNDARY_LOOKAHEAD = 3;
+
+    private static final double MIN_WINDOW = 1;
+    private static final double INITIAL_WINDOW = 4;
+    private static final double MAX_WINDOW = 16;
+    private static final long SLOW_PROBE_MS = 1500;
+    private static final int PROBE_ATTEMPTS = 3;
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final String branch;
+    private final Consumer<GameVersion> onFound;
+    private final Map<Integer, CompletableFuture<Optional<GameVersion>>> probes = new ConcurrentHashMap<>();
+
+    // Window state, guarded by this
+    private double window = INITIAL_WINDOW;
+    private int inFlight;
+    private final Deque<Runnable> queued = new ArrayDeque<>();
+
+    PatchScan(HttpClient httpClient, String baseUrl, String os, String arch, String branch,
+              Consumer<GameVersion> onFound)
+    {
+        this.httpClient = httpClient;
+        this.baseUrl = String.format("%s/%s/%s/%s/0/", baseUrl, os, arch, branch);
+        this.branch = branch;
+        this.onFound = onFound != null ? onFound : version -> {};
+    }
+
+    // Gallops up from the highest known patch (known + 1, + 2, + 4, ...) until
+    // a probe misses, then binary-searches between the last hit and that miss.
+    // A few numbers past the boundary are probed together so one missing
+    // patch does not end the search early. Below the boundary only numbers
+    // newer than the known ones are probed, known entries are kept as the
+    // CDN never drops a patch
+    List<GameVersion> run(List<GameVersion> cached, VersionManager.ProgressListener listener) throws IOException
+    {
+        Map<Integer, GameVersion> known = new TreeMap<>();
+        for (GameVersion version : cached) {
+            known.put(version.getPatchNumber(), version);
+        }
+
+        int highestKnown = known.isEmpty() ? -1 : Collections.max(known.keySet());
+
+        listener.onProgress(0, "Scanning " + branch + " versions...");
+
+        try
+        {
+            int latest = findLatestPatch(Math.max(highestKnown, 0));
+            listener.onProgress(10, "Latest " + branch + " patch: " + latest);
+
+            List<CompletableFuture<Optional<GameVersion>>> fills = new ArrayList<>();
+            for (int i = highestKnown + 1; i <= latest; i++)
+            {
+                if (!probes.containsKey(i)) {
+                    fills.add(probe(i));
+                }
+            }
+
+            int[] completed = {0};
+            for (CompletableFuture<Optional<GameVersion>> fill : fills)
+            {
+                fill.thenRun(() ->
+                {
+                    int done;
+                    synchronized (completed) {
+                        done = ++completed[0];
+                    }
+                    listener.onProgress(10 + done * 90 / fills.size(),
+                            "count: " + (known.size() + found().size()));
+                });
+            }
+
+            for (CompletableFuture<Optional<GameVersion>> fill : fills) {
+                await(fill);
+            }
+        }
+        finally {
+            cancel();
+        }
+
+        for (GameVersion version : found()) {
+            known.put(version.getPatchNumber(), version);
+        }
+
+        List<GameVersion> versions = new ArrayList<>(known.values());
+        versions.sort(Comparator.comparingInt(GameVersion::getPatchNumber).reversed());
+
+        System.out.printf("Scanned %s versions with %d requests, %d found%n",
+                branch, probes.size(), versions.size());
+
+        listener.onProgress(100, "count: " + versions.size());
+        return versions;
+    }
+
+    // from is taken to exist, returns the highest patch number that does
+    private int findLatestPatch(int from) throws IOException
+    {
+        int low = from;
+
+        while (true)
+        {
+            int step = 1;
+            int high = -1;
+
+            while (low + step <= MAX_PATCH_NUMBER)
+            {
+                if (await(probe(low + step)) == null)
+                {
+                    high = low + step;
+                    break;
+                }
+
+                low += step;
+                step *= 2;
+            }
+
+            if (high < 0) {
+                return low;
+            }
+
+            while (high - low > 1)
+            {
+                int middle = low + (high - low) / 2;
+                if (await(probe(middle)) != null) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+
+            List<CompletableFuture<Optional<GameVersion>>> ahead = new ArrayList<>();
+            for (int i = 1; i <= BOUNDARY_LOOKAHEAD; i++) {
+                ahead.add(probe(low + i));
+            }
+
+            int next = low;
+            for (CompletableFuture<Optional<GameVersion>> probe : ahead)
+            {
+                GameVersion version = await(probe);
+                if (version != null) {
+                    next = Math.max(next, version.getPatchNumber());
+                }
+            }
+
+            if (next == low) {
+                return low;
+            }
+            low = next;
+        }
+    }
+
+    // Every number is asked at most once per scan
+    private CompletableFuture<Optional<GameVersion>> probe(int patchNumber)
+    {
+        return probes.computeIfAbsent(patchNumber, n ->
+        {
+            CompletableFuture<Optional<GameVersion>> result = new CompletableFuture<>();
+            enqueue(() -> send(n, result, 1), false);
+            return result;
+        });
+    }
+
+    private void enqueue(Runnable request, boolean first)
+    {
+        synchronized (this)
+        {
+            if (first) queued.addFirst(request);
+            else queued.addLast(request);
+        }
+        pump();
+    }
+
+    private void pump()
+    {
+        List<Runnable> start = new ArrayList<>();
+
+        synchronized (this)
+        {
+            while (inFlight < (int) window && !queued.isEmpty())
+            {
+                inFlight++;
+                start.add(queued.pollFirst());
+            }
+        }
+
+        start.forEach(Runnable::run);
+    }
+
+    private synchronized void onProbeDone(boolean ok, long millis)
+    {
+        inFlight--;
+
+        if (!ok || millis > SLOW_PROBE_MS) {
+            window = Math.max(MIN_WINDOW, window / 2);
+        } else {
+            window = Math.min(MAX_WINDOW, window + 1 / window);
+        }
+    }
+
+    private void send(int patchNumber, CompletableFuture<Optional<GameVersion>> result, int attempt)
+    {
+        String fileName = patchNumber + ".pwr";
+        String url = baseUrl + fileName;
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(5))
+                .build();
+
+        long start = System.nanoTime();
+
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) ->
+        {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // 5xx and 429 mean the host is struggling, not that the patch is missing
+            boolean ok = error == null && response.statusCode() < 500 && response.statusCode() != 429;
+            onProbeDone(ok, millis);
+
+            if (!ok)
+            {
+                if (attempt < PROBE_ATTEMPTS && !result.isDone())
+                {
+                    enqueue(() -> send(patchNumber, result, attempt + 1), true);
+                    return;
+                }
+
+                String reason = error != null ? String.valueOf(error.getMessage()) : "HTTP " + response.statusCode();
+                result.completeExceptionally(new IOException("Failed to check patch " + patchNumber + ": " + reason));
+            }
+            else if (response.statusCode() == 200)
+            {
+                long size = response.headers()
+                        .firstValueAsLong("Content-Length")
+                        .orElse(-1);
+
+                String versionName = branch.equals("pre-release")
+                        ? "Pre-Release " + patchNumber
+                        : "Release " + patchNumber;
+
+                GameVersion version = new GameVersion(versionName, fileName, url, patchNumber, size, false, branch);
+                if (result.complete(Optional.of(version))) {
+                    onFound.accept(version);
+                }
+            }
+            else
+            {
+                result.complete(Optional.empty());
+            }
+
+            pump();
+        });
+    }
+
+    // Drops whatever is still queued once the scan is over or has failed
+    private void cancel()
+    {
+        synchronized (this) {
+            queued.clear();
+        }
+
+        for (CompletableFuture<Optional<GameVersion>> probe : probes.values()) {
+            probe.cancel(false);
+        }
+    }
+
+    private List<GameVersion> found()
+    {
+        List<GameVersion> found = new ArrayList<>();
+        for (CompletableFuture<Optional<GameVersion>> probe : probes.values())
+        {
+            if (probe.isDone() && !probe.isCompletedExceptionally()) {
+                probe.join().ifPresent(found::add);
+            }
+        }
+        return found;
+    }
+
+    private static GameVersion await(CompletableFuture<Optional<GameVersion>> probe) throws IOException
+    {
+        try {
+            return probe.get().orElse(null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Version scan interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+}
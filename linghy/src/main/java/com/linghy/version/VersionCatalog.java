@@ -0,0 +1,210 @@
+package com.linghy.version;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Available versions per branch, kept in memory. The disk cache is read once
+// and served right away, refreshes run in the background and only probe above
+// the newest known patch, listeners hear about every patch as soon as a probe
+// confirms it, and the disk cache is written a moment after changes settle
+// rather than on each one
+public class VersionCatalog
+{
+    public static final List<String> BRANCHES = List.of("release", "pre-release");
+
+    private static final long REFRESH_INTERVAL_MS = 10 * 60 * 1000;
+    private static final long SAVE_DELAY_MS = 2000;
+
+    public interface Listener
+    {
+        // Called off the EDT
+        void onVersionsChanged(String branch, List<GameVersion> versions);
+
+        default void onRefreshFinished(String branch, Exception error) {}
+    }
+
+    private static VersionCatalog instance;
+
+    private final VersionManager versionManager;
+    private final Map<String, List<GameVersion>> versions = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastRefresh = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<List<GameVersion>>> refreshing = new HashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> pendingSave;
+
+    public VersionCatalog(VersionManager versionManager)
+    {
+        this.versionManager = versionManager;
+        this.executor = Executors.newScheduledThreadPool(BRANCHES.size(), r ->
+        {
+            Thread thread = new Thread(r, "version-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized VersionCatalog getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new VersionCatalog(new VersionManager());
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::flush, "version-catalog-flush"));
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Newest first; the first call for a branch reads its disk cache
+    public List<GameVersion> getVersions(String branch) {
+        return versions.computeIfAbsent(branch, b -> List.copyOf(versionManager.loadCachedVersions(b)));
+    }
+
+    // Newest release, or the newest pre-release when no release is known
+    public GameVersion getLatest()
+    {
+        for (String branch : BRANCHES)
+        {
+            List<GameVersion> known = getVersions(branch);
+            if (!known.isEmpty()) {
+                return known.get(0);
+            }
+        }
+        return null;
+    }
+
+    public CompletableFuture<List<GameVersion>> refreshIfStale(String branch)
+    {
+        Long last = lastRefresh.get(branch);
+        if (last != null && System.currentTimeMillis() - last < REFRESH_INTERVAL_MS) {
+            return CompletableFuture.completedFuture(getVersions(branch));
+        }
+        return refresh(branch, null);
+    }
+
+    // A refresh already running for the branch is joined instead of started again
+    public synchronized CompletableFuture<List<GameVersion>> refresh(String branch,
+                                                                     VersionManager.ProgressListener progress)
+    {
+        CompletableFuture<List<GameVersion>> running = refreshing.get(branch);
+        if (running != null && !running.isDone()) {
+            return running;
+        }
+
+        VersionManager.ProgressListener listener = progress != null ? progress : (percent, message) -> {};
+
+        CompletableFuture<List<GameVersion>> future = CompletableFuture.supplyAsync(() ->
+        {
+            try {
+                return versionManager.scanNewVersions(branch, getVersions(branch), listener,
+                        version -> merge(branch, version));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor).whenComplete((scanned, error) ->
+        {
+            Exception failure = null;
+            if (error != null)
+            {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                failure = cause instanceof Exception e ? e : new ExecutionException(cause);
+                System.err.println("Failed to refresh " + branch + " versions: " + failure.getMessage());
+            }
+            else
+            {
+                lastRefresh.put(branch, System.currentTimeMillis());
+                update(branch, scanned);
+            }
+
+            for (Listener l : listeners) {
+                l.onRefreshFinished(branch, failure);
+            }
+        });
+
+        refreshing.put(branch, future);
+        return future;
+    }
+
+    // A patch confirmed while the scan is still running
+    private void merge(String branch, GameVersion version)
+    {
+        List<GameVersion> updated;
+
+        synchronized (versions)
+        {
+            List<GameVersion> merged = new ArrayList<>(getVersions(branch));
+            merged.removeIf(v -> v.getPatchNumber() == version.getPatchNumber());
+            merged.add(version);
+            merged.sort(Comparator.comparingInt(GameVersion::getPatchNumber).reversed());
+
+            updated = List.copyOf(merged);
+            versions.put(branch, updated);
+        }
+
+        changed(branch, updated);
+    }
+
+    private void update(String branch, List<GameVersion> scanned)
+    {
+        List<GameVersion> updated = List.copyOf(scanned);
+        List<GameVersion> previous;
+
+        synchronized (versions) {
+            previous = versions.put(branch, updated);
+        }
+
+        if (previous == null || !sameVersions(previous, updated)) {
+            changed(branch, updated);
+        }
+    }
+
+    private void changed(String branch, List<GameVersion> updated)
+    {
+        dirty.add(branch);
+        scheduleSave();
+
+        for (Listener l : listeners) {
+            l.onVersionsChanged(branch, updated);
+        }
+    }
+
+    private static boolean sameVersions(List<GameVersion> a, List<GameVersion> b)
+    {
+        if (a.size() != b.size()) return false;
+
+        for (int i = 0; i < a.size(); i++)
+        {
+            if (a.get(i).getPatchNumber() != b.get(i).getPatchNumber()
+                    || a.get(i).getSize() != b.get(i).getSize()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void scheduleSave()
+    {
+        if (pendingSave == null || pendingSave.isDone()) {
+            pendingSave = executor.schedule(this::flush, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void flush()
+    {
+        for (String branch : BRANCHES)
+        {
+            if (dirty.remove(branch)) {
+                versionManager.saveAvailableVersions(versions.get(branch), branch);
+            }
+        }
+    }
+}
@@ -2,24 +2,21 @@ package com.linghy.version;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.linghy.env.DiskUsage;
 import com.linghy.env.Environment;
+import com.linghy.env.Trash;
 
 import java.io.IOException;
-import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 public class VersionManager
 {
     private static final String PATCHES_BASE_URL = "https://game-patches.hytale.com/patches";
-    private static final int MAX_PATCH_SCAN = 100;
-    private static final int SCAN_THREADS = 10;
 
     private final Path versionsFile;
     private final Path installedVersionsFile;
@@ -39,89 +36,25 @@ public class VersionManager
 
     public List<GameVersion> scanAvailableVersions(String branch, ProgressListener listener) throws Exception
     {
-        String os = Environment.getOS();
-        String arch = Environment.getArch();
-
-        List<GameVersion> versions = new ArrayList<>();
-        ExecutorService executor = Executors.newFixedThreadPool(SCAN_THREADS);
-        List<Future<GameVersion>> futures = new ArrayList<>();
-
-        listener.onProgress(0, "Scanning " + branch + " versions...");
-
-        for (int i = 0; i <= MAX_PATCH_SCAN; i++)
-        {
-            final int patchNumber = i;
-            futures.add(executor.submit(() -> checkPatchExists(os, arch, patchNumber, branch)));
-        }
-
-        int completed = 0;
-        for (Future<GameVersion> future : futures)
-        {
-            try {
-                GameVersion version = future.get();
-                if (version != null) {
-                    versions.add(version);
-                }
-            } catch (Exception e) {
-                // ...
-            }
-
-            completed++;
-            int progress = (completed * 100) / futures.size();
-            listener.onProgress(progress, "count: " + versions.size());
-        }
-
-        executor.shutdown();
-
-        versions.sort(Comparator.comparingInt(GameVersion::getPatchNumber).reversed());
-
+        List<GameVersion> versions = scanNewVersions(branch, loadCachedVersions(branch), listener);
         saveAvailableVersions(versions, branch);
-
-        listener.onProgress(100, "count: " + versions.size());
         return versions;
     }
 
-    private GameVersion checkPatchExists(String os, String arch, int patchNumber, String branch)
+    public List<GameVersion> scanNewVersions(String branch, List<GameVersion> cached,
+                                             ProgressListener listener) throws IOException
     {
-        String fileName = patchNumber + ".pwr";
-        String url = String.format("%s/%s/%s/%s/0/%s",
-                PATCHES_BASE_URL, os, arch, branch, fileName);
-
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
-                    .timeout(Duration.ofSeconds(5))
-                    .build();
-
-            HttpResponse<Void> response = httpClient.send(request,
-                    HttpResponse.BodyHandlers.discarding());
-
-            if (response.statusCode() == 200)
-            {
-                long size = response.headers()
-                        .firstValueAsLong("Content-Length")
-                        .orElse(-1);
-
-                String versionName = branch.equals("pre-release")
-                        ? "Pre-Release " + patchNumber
-                        : "Release " + patchNumber;
-
-                return new GameVersion(
-                        versionName,
-                        fileName,
-                        url,
-                        patchNumber,
-                        size,
-                        false,
-                        branch
-                );
-            }
-        } catch (Exception e) {
-            // ...
-        }
+        return scanNewVersions(branch, cached, listener, null);
+    }
 
-        return null;
+    // onFound sees each new patch as soon as it is confirmed, on an HTTP thread
+    public List<GameVersion> scanNewVersions(String branch, List<GameVersion> cached,
+                                             ProgressListener listener, Consumer<GameVersion> onFound)
+            throws IOException
+    {
+        PatchScan scan = new PatchScan(httpClient, PATCHES_BASE_URL,
+                Environment.getOS(), Environment.getArch(), branch, onFound);
+        return scan.run(cached, listener);
     }
 
     public List<GameVersion> loadCachedVersions(String branch)
@@ -133,6 +66,28 @@ public class VersionManager
                 String json = Files.readString(cacheFile);
                 return gson.fromJson(json, new TypeToken<List<GameVersion>>(){}.getType());
             }
+
+            // Caches from before they were keyed by OS and arch may hold
+            // another machine's entries, only ours are carried over
+            Path legacyFile = getLegacyCacheFile(branch);
+            if (Files.exists(legacyFile))
+            {
+                String json = Files.readString(legacyFile);
+                List<GameVersion> legacy = gson.fromJson(json, new TypeToken<List<GameVersion>>(){}.getType());
+
+                String platform = "/" + Environment.getOS() + "/" + Environment.getArch() + "/";
+                List<GameVersion> versions = new ArrayList<>();
+                if (legacy != null)
+                {
+                    for (GameVersion version : legacy)
+                    {
+                        if (version.getDownloadUrl() != null && version.getDownloadUrl().contains(platform)) {
+                            versions.add(version);
+                        }
+                    }
+                }
+                return versions;
+            }
         } catch (IOException e) {
             System.err.println("Failed to load cached versions for " + branch + ": " + e.getMessage());
         }
@@ -165,7 +120,7 @@ public class VersionManager
         return null;
     }
 
-    private void saveAvailableVersions(List<GameVersion> versions, String branch)
+    void saveAvailableVersions(List<GameVersion> versions, String branch)
     {
         try {
             Path cacheFile = getCacheFile(branch);
@@ -177,6 +132,13 @@ public class VersionManager
     }
 
     private Path getCacheFile(String branch)
+    {
+        String name = branch.equals("pre-release") ? "prerelease" : "release";
+        return Environment.getDefaultAppDir().resolve(String.format("available_versions_%s_%s_%s.json",
+                name, Environment.getOS(), Environment.getArch()));
+    }
+
+    private Path getLegacyCacheFile(String branch)
     {
         Path appDir = Environment.getDefaultAppDir();
         if (branch.equals("pre-release")) {
@@ -253,9 +215,8 @@ public class VersionManager
     {
         Path versionDir = getVersionDirectory(patchNumber, branch);
 
-        if (Files.exists(versionDir)) {
-            deleteRecursively(versionDir);
-        }
+        Trash.moveToTrash(versionDir);
+        DiskUsage.getInstance().forget(versionDir);
 
         List<GameVersion> installed = getInstalledVersions();
         installed.removeIf(v -> v.getPatchNumber() == patchNumber
@@ -265,21 +226,6 @@ public class VersionManager
         Files.writeString(installedVersionsFile, json);
     }
 
-    private void deleteRecursively(Path path) throws IOException
-    {
-        if (!Files.exists(path)) return;
-
-        Files.walk(path)
-                .sorted(Comparator.reverseOrder())
-                .forEach(p -> {
-                    try {
-                        Files.delete(p);
-                    } catch (IOException e) {
-                        System.err.println("Failed to delete: " + p);
-                    }
-                });
-    }
-
     public interface ProgressListener {
         void onProgress(int percent, String message);
     }